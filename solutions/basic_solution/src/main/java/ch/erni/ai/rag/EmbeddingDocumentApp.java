@@ -1,20 +1,17 @@
 package ch.erni.ai.rag;
 
+import ch.erni.ai.llm.service.BatchingEmbedder;
 import ch.erni.ai.llm.service.LoadingFromHuggingFaceTokenEstimator;
-import dev.langchain4j.data.document.Document;
+import ch.erni.ai.llm.service.StreamingDocumentIngestor;
+import ch.erni.ai.llm.service.TokenWindowSplitter;
 import dev.langchain4j.data.document.Metadata;
-import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
-import dev.langchain4j.data.document.splitter.DocumentBySentenceSplitter;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
-import dev.langchain4j.data.embedding.Embedding;
-import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
-import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModelFactory;
-import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.pgvector.PgVectorEmbeddingStore;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
 
 /*
  * INSTRUCTIONS FOR STUDENTS:
@@ -29,7 +26,7 @@ import java.io.File;
  */
 public class EmbeddingDocumentApp {
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
         PgVectorEmbeddingStore pg = PgVectorEmbeddingStore.builder()
                 .createTable(true)
@@ -40,28 +37,36 @@ public class EmbeddingDocumentApp {
                 .user("baselone")
                 .password("baselone")
                 .database("baselone")
-                .dropTableFirst(true)
+                // the checkpoints resume an interrupted run, the segments stored so far are kept,
+                // the ingestor replaces the segments of a changed manual
+                .dropTableFirst(false)
                 .build();
 
         File dir = new File("./data/manuals/");
         File[] manuals = dir.listFiles();
         LoadingFromHuggingFaceTokenEstimator estimator = LoadingFromHuggingFaceTokenEstimator.get("sentence-transformers/all-MiniLM-L6-v2");
+        // all-MiniLM-L6-v2 runs in-process, the batch size only bounds the memory per inference call
+        BatchingEmbedder embedder = new BatchingEmbedder(embeddingModel, estimator, 8192, 32);
+
+        var splitter = new TokenWindowSplitter(estimator, 800, 400);
+        // embeds and stores every 10 pages, a manual is never loaded as a whole
+        Path checkpoints = Path.of(System.getProperty("user.home"), ".cache", "baselone", "manual-checkpoints");
+        var ingestor = new StreamingDocumentIngestor(splitter, embedder, pg, checkpoints, 10);
 
         for (var manual: manuals) {
+            if (!manual.getName().endsWith(".pdf")) {
+                continue;
+            }
             System.out.println("Processing " + manual);
             System.out.println("--------------------------");
-            Document document = FileSystemDocumentLoader.loadDocument(manual.toPath());
-            var splitter = DocumentSplitters.recursive(800,400, estimator);
-            var segments = splitter.split(document);
-            System.out.println("Manual has: " + segments.size() + " segments");
-            for (var segment: segments) {
-                var response = embeddingModel.embed(segment);
-                var transformed = TextSegment.textSegment(segment.text(), Metadata.metadata("file", manual.getName()));
-                System.out.println(transformed);
-                System.out.println("----");
-                //pg.add(response.content(), transformed);
+            try (var pages = new PdfPages(manual)) {
+                var result = ingestor.ingest(pages, Metadata.metadata("file", manual.getName()));
+                if (result.skipped()) {
+                    System.out.println("Already stored " + result.segments() + " segments");
+                } else {
+                    System.out.println("Stored " + result.segments() + " segments of " + result.pages() + " pages");
+                }
             }
-
         }
     }
 }
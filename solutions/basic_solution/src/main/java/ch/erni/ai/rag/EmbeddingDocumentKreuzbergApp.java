@@ -0,0 +1,61 @@
+package ch.erni.ai.rag;
+
+import ch.erni.ai.llm.service.BatchingEmbedder;
+import ch.erni.ai.llm.service.LoadingFromHuggingFaceTokenEstimator;
+import com.deverni.kreuzberg.client.ExtractionCache;
+import com.deverni.kreuzberg.client.ImageDataMode;
+import com.deverni.kreuzberg.client.KreuzbergClient;
+import com.deverni.kreuzberg.client.model.ExtractionConfig;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import dev.langchain4j.store.embedding.pgvector.PgVectorEmbeddingStore;
+
+import java.io.File;
+
+/*
+ * Same as EmbeddingDocumentApp, but the manuals are extracted and split by the Kreuzberg server
+ * (docker run -p 8000:8000 goldziher/kreuzberg), so only the embedding runs in this JVM.
+ */
+public class EmbeddingDocumentKreuzbergApp {
+
+    public static void main(String[] args) {
+        EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
+        PgVectorEmbeddingStore pg = PgVectorEmbeddingStore.builder()
+                .createTable(true)
+                .table("manual_kreuzberg_embeddings")
+                .dimension(embeddingModel.dimension())
+                .host("localhost")
+                .port(8432)
+                .user("baselone")
+                .password("baselone")
+                .database("baselone")
+                .dropTableFirst(true)
+                .build();
+
+        LoadingFromHuggingFaceTokenEstimator estimator = LoadingFromHuggingFaceTokenEstimator.get("sentence-transformers/all-MiniLM-L6-v2");
+        BatchingEmbedder embedder = new BatchingEmbedder(embeddingModel, estimator, 8192, 32);
+
+        ExtractionConfig config = ExtractionConfig.builder()
+                .chunkContent(true)
+                .maxChars(2000)
+                .maxOverlap(200)
+                .extractTables(true)
+                .build();
+        try (var kreuzberg = new KreuzbergClient().withImageDataMode(ImageDataMode.SKIP)) {
+            var parser = new KreuzbergDocumentParser(kreuzberg, config, ExtractionCache.builder(kreuzberg).build(), "manual.pdf");
+
+            for (var manual : new File("./data/manuals/").listFiles()) {
+                if (!manual.getName().endsWith(".pdf")) {
+                    continue;
+                }
+                System.out.println("Processing " + manual);
+                System.out.println("--------------------------");
+                var segments = parser.segments(manual.toPath(), Metadata.metadata("file", manual.getName()));
+                System.out.println("Manual has: " + segments.size() + " segments");
+                var ids = embedder.embedAndStore(segments, pg);
+                System.out.println("Stored " + ids.size() + " segments");
+            }
+        }
+    }
+}
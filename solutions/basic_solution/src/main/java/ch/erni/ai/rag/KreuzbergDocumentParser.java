@@ -0,0 +1,179 @@
+package ch.erni.ai.rag;
+
+import com.deverni.kreuzberg.client.ExtractionCache;
+import com.deverni.kreuzberg.client.ImageDataMode;
+import com.deverni.kreuzberg.client.KreuzbergClient;
+import com.deverni.kreuzberg.client.exception.KreuzbergException;
+import com.deverni.kreuzberg.client.model.ExtractionConfig;
+import com.deverni.kreuzberg.client.model.ExtractionMetadata;
+import com.deverni.kreuzberg.client.model.ExtractionResult;
+import com.deverni.kreuzberg.client.model.Keyword;
+import dev.langchain4j.data.document.BlankDocumentException;
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentParser;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Parses documents with the Kreuzberg extraction server instead of in this JVM.
+ * <p>
+ * The document text is the extracted content followed by the extracted tables as markdown. The metadata holds the
+ * mime type, the number of pages, title, author, the detected languages and keywords, as far as the server found
+ * them.
+ * <p>
+ * With {@code chunkContent(true)} in the extraction config the server also splits the content, see
+ * {@link #segments(Path, Metadata)}, so no local splitter is needed. The image data is skipped while reading the
+ * response, the cache must therefore be built on a client with {@link ImageDataMode#SKIP}.
+ */
+public class KreuzbergDocumentParser implements DocumentParser {
+
+    private final KreuzbergClient client;
+    private final ExtractionConfig config;
+    private final ExtractionCache cache;
+    private final String filename;
+
+    /**
+     * @param config   the extraction config, may be null
+     * @param cache    extraction results of files parsed before, may be null, e.g.
+     *                 {@code ExtractionCache.builder(client.withImageDataMode(ImageDataMode.SKIP)).build()}
+     * @param filename the name sent for documents parsed from a stream, the server detects the format by its
+     *                 extension, e.g. "manual.pdf"
+     * @throws IllegalArgumentException if the cache keeps the image data
+     */
+    public KreuzbergDocumentParser(KreuzbergClient client, ExtractionConfig config, ExtractionCache cache, String filename) {
+        if (cache != null && cache.getImageDataMode() != ImageDataMode.SKIP) {
+            throw new IllegalArgumentException("The cache must be built on a client with ImageDataMode.SKIP, "
+                    + "the parser does not use the images");
+        }
+        this.client = client.withImageDataMode(ImageDataMode.SKIP);
+        this.config = config;
+        this.cache = cache;
+        this.filename = filename;
+    }
+
+    public KreuzbergDocumentParser(KreuzbergClient client, ExtractionConfig config) {
+        this(client, config, null, "document.pdf");
+    }
+
+    @Override
+    public Document parse(InputStream inputStream) {
+        try {
+            return toDocument(first(client.extractStream(config, inputStream, filename)));
+        } catch (KreuzbergException e) {
+            throw new IllegalStateException("Could not parse " + filename, e);
+        }
+    }
+
+    /**
+     * Parses a file, taking the result from the cache if there is one.
+     */
+    public Document parse(Path file) {
+        return toDocument(extract(file));
+    }
+
+    /**
+     * Returns the segments of the file as split by the server, plus one segment per table.
+     * <p>
+     * Every segment gets the document metadata, the given metadata, its "index" and a "type", "text" or "table".
+     * Table segments also get the "page" they are on. If the server returned no chunks, because chunking is not
+     * enabled in the config, the whole content is a single segment.
+     */
+    public List<TextSegment> segments(Path file, Metadata metadata) {
+        ExtractionResult result = extract(file);
+        Metadata documentMetadata = metadata(result);
+        documentMetadata.putAll(metadata.toMap());
+        List<String> chunks = result.getChunks() != null && !result.getChunks().isEmpty()
+                ? result.getChunks()
+                : List.of(content(result));
+        List<TextSegment> segments = new ArrayList<>();
+        for (String chunk : chunks) {
+            if (!chunk.isBlank()) {
+                segments.add(TextSegment.from(chunk, documentMetadata.copy()
+                        .put("index", String.valueOf(segments.size()))
+                        .put("type", "text")));
+            }
+        }
+        for (Map<String, Object> table : tables(result)) {
+            var tableMetadata = documentMetadata.copy()
+                    .put("index", String.valueOf(segments.size()))
+                    .put("type", "table");
+            if (table.get("page_number") instanceof Number page) {
+                tableMetadata.put("page", page.intValue());
+            }
+            segments.add(TextSegment.from(table.get("text").toString(), tableMetadata));
+        }
+        return segments;
+    }
+
+    private ExtractionResult extract(Path file) {
+        try {
+            return first(cache != null ? cache.extract(config, file) : client.extractPath(config, file));
+        } catch (KreuzbergException e) {
+            throw new IllegalStateException("Could not parse " + file, e);
+        }
+    }
+
+    private static ExtractionResult first(List<ExtractionResult> results) {
+        if (results.isEmpty()) {
+            throw new BlankDocumentException();
+        }
+        return results.get(0);
+    }
+
+    private static Document toDocument(ExtractionResult result) {
+        StringBuilder text = new StringBuilder(content(result));
+        for (Map<String, Object> table : tables(result)) {
+            text.append("\n\n").append(table.get("text"));
+        }
+        if (text.toString().isBlank()) {
+            throw new BlankDocumentException();
+        }
+        return Document.from(text.toString(), metadata(result));
+    }
+
+    private static String content(ExtractionResult result) {
+        return result.getContent() == null ? "" : result.getContent();
+    }
+
+    private static List<Map<String, Object>> tables(ExtractionResult result) {
+        if (result.getTables() == null) {
+            return List.of();
+        }
+        return result.getTables().stream()
+                .filter(table -> table.get("text") != null && !table.get("text").toString().isBlank())
+                .toList();
+    }
+
+    private static Metadata metadata(ExtractionResult result) {
+        Metadata metadata = new Metadata();
+        if (result.getMimeType() != null) {
+            metadata.put("mime_type", result.getMimeType());
+        }
+        ExtractionMetadata extracted = result.getMetadata();
+        if (extracted != null) {
+            if (extracted.getPages() != null) {
+                metadata.put("pages", extracted.getPages());
+            }
+            if (extracted.getTitle() != null) {
+                metadata.put("title", extracted.getTitle());
+            }
+            if (extracted.getAuthor() != null) {
+                metadata.put("author", extracted.getAuthor());
+            }
+        }
+        if (result.getDetectedLanguages() != null && !result.getDetectedLanguages().isEmpty()) {
+            metadata.put("languages", String.join(",", result.getDetectedLanguages()));
+        }
+        if (result.getKeywords() != null && !result.getKeywords().isEmpty()) {
+            metadata.put("keywords", result.getKeywords().stream().map(Keyword::getTerm).collect(Collectors.joining(",")));
+        }
+        return metadata;
+    }
+}
@@ -3,6 +3,8 @@ package ch.erni.ai.rag;
 import ch.erni.ai.basic.AbstractChat;
 import ch.erni.ai.demo.cv.config.CVConfigProps;
 import ch.erni.ai.demo.cv.service.CVService;
+import ch.erni.ai.llm.service.BatchingEmbedder;
+import ch.erni.ai.llm.service.LoadingFromHuggingFaceTokenEstimator;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
@@ -13,6 +15,8 @@ import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.pgvector.PgVectorEmbeddingStore;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 public class Lesson_02IngestCVApp {
@@ -42,27 +46,24 @@ public class Lesson_02IngestCVApp {
         CVService cvService = CVService.create();
         var profiles = cvService.getProfiles();
 
+        List<TextSegment> segments = new ArrayList<>();
         for (var profile : profiles) {
             String md = cvService.getProfileAsMarkdown(profile.id);
-            System.out.println("ingesting " + profile.name + " ...");
-            ingest(
-                    embeddingModel,
-                    pg,
-                    md,
-                    Metadata.from(Map.of("id", profile.id, "name", profile.name))
-            );
+            segments.add(TextSegment.from(md, Metadata.from(Map.of("id", profile.id, "name", profile.name))));
         }
+
+        System.out.println("ingesting " + segments.size() + " profiles ...");
+        var estimator = LoadingFromHuggingFaceTokenEstimator.get("nomic-ai/nomic-embed-text-v2-moe");
+        ingest(new BatchingEmbedder(embeddingModel, estimator, 16384, 32), pg, segments);
     }
 
-    public static String ingest(EmbeddingModel embeddingModel,
-                                EmbeddingStore<TextSegment> embeddingStore,
-                                String md, Metadata metadata) {
+    public static List<String> ingest(BatchingEmbedder embedder,
+                                      EmbeddingStore<TextSegment> embeddingStore,
+                                      List<TextSegment> segments) {
 
-        // create embedding
-        var embeddingResponse = embeddingModel.embed(md);
-        // add and return the ide
-        String id = embeddingStore.add(embeddingResponse.content(), TextSegment.from(md, metadata));
-        System.out.println("Ingested " + id);
-        return id;
+        // create the embeddings with one request per batch and add each batch with one insert
+        List<String> ids = embedder.embedAndStore(segments, embeddingStore);
+        System.out.println("Ingested " + ids.size() + " profiles");
+        return ids;
     }
 }
@@ -1,6 +1,7 @@
 package ch.erni.ai.rag;
 
 import ch.erni.ai.util.SpinnerUtil;
+import com.deverni.kreuzberg.client.ExtractionCache;
 import com.deverni.kreuzberg.client.KreuzbergClient;
 import com.deverni.kreuzberg.client.exception.KreuzbergException;
 import com.deverni.kreuzberg.client.model.ExtractionConfig;
@@ -26,7 +27,9 @@ public class LoadDocumentKreuzbergApp {
         spinner.startSpinner("Loading " + manual);
 
         var kreuzberg = new KreuzbergClient();
-        try(var input = Files.newInputStream(manual.toPath())) {
+        // unchanged manuals are taken from ~/.cache/kreuzberg-client instead of being uploaded again
+        var cache = ExtractionCache.builder(kreuzberg).build();
+        try {
             ExtractionConfig config = ExtractionConfig.builder()
                     .extractKeywords(true)
                     .keywordCount(10)
@@ -36,8 +39,8 @@ public class LoadDocumentKreuzbergApp {
                     .extractTables(true)
                     .autoDetectLanguage(true)
                     .build();
-            var extractionResults = kreuzberg.extractStream(config, input, manual.getName());
-            spinner.stopSpinner("Loaded " + manual);
+            var extractionResults = cache.extract(config, manual.toPath());
+            spinner.stopSpinner("Loaded " + manual + " (" + cache.getStats() + ")");
             Path out = Paths.get(dir.getAbsolutePath(), manual.getName()+ ".json");
             ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
             String json = mapper.writeValueAsString(extractionResults.getFirst());
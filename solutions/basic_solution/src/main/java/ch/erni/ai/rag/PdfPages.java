@@ -0,0 +1,60 @@
+package ch.erni.ai.rag;
+
+import ch.erni.ai.llm.service.PagedDocument;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * A PDF read page by page with PDFBox.
+ * <p>
+ * The file is parsed lazily and buffered in temp files instead of the heap, so only the page being extracted is
+ * held in memory. The id changes when the file is replaced.
+ */
+public class PdfPages implements PagedDocument {
+
+    private final File file;
+    private final PDDocument pdf;
+    private final PDFTextStripper stripper;
+
+    public PdfPages(File file) throws IOException {
+        this.file = file;
+        this.pdf = Loader.loadPDF(file, IOUtils.createTempFileOnlyStreamCache());
+        this.stripper = new PDFTextStripper();
+    }
+
+    @Override
+    public String id() {
+        return file.getName() + ":" + file.length() + ":" + file.lastModified();
+    }
+
+    @Override
+    public int pageCount() {
+        return pdf.getNumberOfPages();
+    }
+
+    @Override
+    public String pageText(int page) {
+        stripper.setStartPage(page);
+        stripper.setEndPage(page);
+        try {
+            return stripper.getText(pdf);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not extract page " + page + " of " + file, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            pdf.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
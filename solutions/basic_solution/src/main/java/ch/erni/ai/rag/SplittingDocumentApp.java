@@ -1,6 +1,9 @@
 package ch.erni.ai.rag;
 
+import ch.erni.ai.llm.service.CachingTokenOffsetEstimator;
 import ch.erni.ai.llm.service.LoadingFromHuggingFaceTokenEstimator;
+import ch.erni.ai.llm.service.TokenOffsetEstimator;
+import ch.erni.ai.llm.service.TokenWindowSplitter;
 import ch.erni.ai.util.SpinnerUtil;
 import dev.langchain4j.data.document.Document;
 import dev.langchain4j.data.document.DocumentSplitter;
@@ -28,8 +31,9 @@ public class SplittingDocumentApp {
     public static void main(String[] args) {
 
         File manual = new File("./data/manuals/h_4900_b.pdf");
-        LoadingFromHuggingFaceTokenEstimator estimator = LoadingFromHuggingFaceTokenEstimator
-                .get("sentence-transformers/all-MiniLM-L6-v2");
+        // the splitters count the same paragraphs and sentences many times, remember the counts
+        TokenOffsetEstimator estimator = new CachingTokenOffsetEstimator(LoadingFromHuggingFaceTokenEstimator
+                .get("sentence-transformers/all-MiniLM-L6-v2"), 8_000_000);
         //nomic-ai/nomic-embed-text-v2-moe
         //sentence-transformers/all-MiniLM-L6-v2
         var spinner = new SpinnerUtil();
@@ -49,8 +53,10 @@ public class SplittingDocumentApp {
         };
         var splitter2 = new DocumentByParagraphSplitter(800, 400, estimator);
         var splitter3 = DocumentSplitters.recursive(800, 400, estimator);
+        // tokenizes the manual once and cuts the segments by token offsets
+        var splitter4 = new TokenWindowSplitter(estimator, 800, 400);
 
-        var segments = splitter2.split(document);
+        var segments = splitter4.split(document);
         spinner.stopSpinner("Manual has: " + segments.size() + " segments");
         int i = 0;
         for (var segment : segments) {
@@ -0,0 +1,304 @@
+package ch.erni.ai.demo.cv.rag.agent;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.model.output.TokenUsage;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * An agent chat running in the background.
+ * <p>
+ * Everything that happens is recorded as a numbered {@link Event}, so clients can poll for the events after the
+ * last one they have seen or subscribe to receive them as they happen.
+ * Events: "status", "message" (text of an intermediate model response), "tool_call", "tool_result" and
+ * "token_usage" (usage of the last model call and the total of the job).
+ * <p>
+ * Subscribers are called on a virtual thread of their own and never while the job is locked, so a slow client
+ * does not hold up the agent or other clients of the job.
+ */
+@Slf4j
+public class AgentJob implements AgentProgressListener {
+
+    public enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED;
+
+        public boolean isFinished() {
+            return this == SUCCEEDED || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    public record Event(int sequence, String type, Instant timestamp, Map<String, Object> data) {
+    }
+
+    public record Snapshot(String id, Status status, String question, String sessionId,
+                           Instant createdAt, Instant startedAt, Instant finishedAt,
+                           String result, String error, Usage tokenUsage, List<Event> events) {
+    }
+
+    public record Usage(int inputTokens, int outputTokens, int totalTokens) {
+    }
+
+    private static final int MAX_TOOL_RESULT_LENGTH = 2000;
+    private static final Executor DELIVERY = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("agent-job-events-", 0).factory());
+
+    @Getter
+    private final String id;
+    @Getter
+    private final String question;
+    @Getter
+    private final String sessionId;
+    private final Instant createdAt = Instant.now();
+
+    // guarded by this
+    private Status status = Status.QUEUED;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private String result;
+    private String error;
+    private Usage tokenUsage = new Usage(0, 0, 0);
+    private boolean cancelRequested;
+    private final List<Event> events = new ArrayList<>();
+    private final List<Subscription> subscribers = new ArrayList<>();
+
+    private Thread runner;
+
+    AgentJob(String id, String question, String sessionId) {
+        this.id = id;
+        this.question = question;
+        this.sessionId = sessionId;
+        publish("status", Map.of("status", Status.QUEUED));
+    }
+
+    /**
+     * @param sinceSequence only events with a higher sequence number are returned, -1 for all
+     */
+    public synchronized Snapshot snapshot(int sinceSequence) {
+        int from = Math.max(0, Math.min(events.size(), sinceSequence + 1));
+        return new Snapshot(id, status, question, sessionId, createdAt, startedAt, finishedAt,
+                result, error, tokenUsage, List.copyOf(events.subList(from, events.size())));
+    }
+
+    public synchronized Status getStatus() {
+        return status;
+    }
+
+    synchronized Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    /**
+     * Sends all recorded events to the subscriber and then every new one until the job is finished.
+     * The last event of a job is always a "status" event with a finished status. The subscriber is called from
+     * another thread, one event at a time, and removed when it throws.
+     */
+    public synchronized void subscribe(Consumer<Event> subscriber) {
+        Subscription subscription = new Subscription(subscriber);
+        subscription.offer(events);
+        if (!status.isFinished()) {
+            subscribers.add(subscription);
+        }
+    }
+
+    public void unsubscribe(Consumer<Event> subscriber) {
+        List<Subscription> removed = new ArrayList<>();
+        synchronized (this) {
+            subscribers.removeIf(subscription -> subscription.consumer == subscriber && removed.add(subscription));
+        }
+        removed.forEach(Subscription::close);
+    }
+
+    /**
+     * Finishes the job as cancelled. A running chat is interrupted and stops at the latest before the next model
+     * call, a model call in progress cannot be aborted but its result is discarded.
+     *
+     * @return false if the job was already finished
+     */
+    public synchronized boolean cancel() {
+        if (status.isFinished()) {
+            return false;
+        }
+        cancelRequested = true;
+        if (runner != null) {
+            runner.interrupt();
+        }
+        cancelled();
+        return true;
+    }
+
+    synchronized boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    /**
+     * Called by the thread that runs the job before it waits for a free slot, so it can be interrupted by a cancel.
+     */
+    synchronized void attach(Thread thread) {
+        checkCancelled();
+        runner = thread;
+    }
+
+    synchronized void started() {
+        checkCancelled();
+        startedAt = Instant.now();
+        updateStatus(Status.RUNNING, Map.of("status", Status.RUNNING));
+    }
+
+    synchronized void succeeded(String result) {
+        if (status.isFinished()) {
+            return;
+        }
+        this.result = result;
+        finish(Status.SUCCEEDED, Map.of("status", Status.SUCCEEDED, "result", Objects.toString(result, "")));
+    }
+
+    synchronized void failed(Throwable e) {
+        if (status.isFinished()) {
+            return;
+        }
+        this.error = String.valueOf(e.getMessage());
+        finish(Status.FAILED, Map.of("status", Status.FAILED, "error", error));
+    }
+
+    synchronized void cancelled() {
+        finish(Status.CANCELLED, Map.of("status", Status.CANCELLED));
+    }
+
+    @Override
+    public void beforeModelRequest() {
+        checkCancelled();
+    }
+
+    @Override
+    public synchronized void onModelResponse(AiMessage message, TokenUsage usage) {
+        if (message.hasToolExecutionRequests()) {
+            if (message.text() != null && !message.text().isBlank()) {
+                publish("message", Map.of("text", message.text()));
+            }
+            for (ToolExecutionRequest request : message.toolExecutionRequests()) {
+                publish("tool_call", Map.of("name", request.name(), "arguments", String.valueOf(request.arguments())));
+            }
+        }
+        if (usage != null) {
+            int input = Objects.requireNonNullElse(usage.inputTokenCount(), 0);
+            int output = Objects.requireNonNullElse(usage.outputTokenCount(), 0);
+            tokenUsage = new Usage(tokenUsage.inputTokens() + input, tokenUsage.outputTokens() + output,
+                    tokenUsage.totalTokens() + input + output);
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("inputTokens", input);
+            data.put("outputTokens", output);
+            data.put("jobTotalTokens", tokenUsage.totalTokens());
+            publish("token_usage", data);
+        }
+    }
+
+    @Override
+    public synchronized void onToolResult(ToolExecutionResultMessage toolResult) {
+        String text = String.valueOf(toolResult.text());
+        if (text.length() > MAX_TOOL_RESULT_LENGTH) {
+            text = text.substring(0, MAX_TOOL_RESULT_LENGTH) + "...";
+        }
+        publish("tool_result", Map.of("name", String.valueOf(toolResult.toolName()), "text", text));
+    }
+
+    private synchronized void checkCancelled() {
+        if (cancelRequested) {
+            throw new CancellationException("Agent job " + id + " was cancelled");
+        }
+    }
+
+    private void finish(Status finalStatus, Map<String, Object> data) {
+        if (status.isFinished()) {
+            return;
+        }
+        finishedAt = Instant.now();
+        runner = null;
+        updateStatus(finalStatus, data);
+        subscribers.clear();
+    }
+
+    private void updateStatus(Status newStatus, Map<String, Object> data) {
+        status = newStatus;
+        publish("status", data);
+    }
+
+    private void publish(String type, Map<String, Object> data) {
+        Event event = new Event(events.size(), type, Instant.now(), data);
+        events.add(event);
+        // only queues the event, the subscribers are called outside the lock
+        for (Subscription subscription : subscribers) {
+            subscription.offer(List.of(event));
+        }
+    }
+
+    /**
+     * The events not yet sent to a subscriber. At most one delivery thread per subscriber drains them, in order.
+     */
+    private class Subscription {
+
+        private final Consumer<Event> consumer;
+        // guarded by this subscription
+        private final Queue<Event> pending = new ArrayDeque<>();
+        private boolean delivering;
+        private boolean closed;
+
+        Subscription(Consumer<Event> consumer) {
+            this.consumer = consumer;
+        }
+
+        void offer(List<Event> newEvents) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                pending.addAll(newEvents);
+                if (delivering || pending.isEmpty()) {
+                    return;
+                }
+                delivering = true;
+            }
+            DELIVERY.execute(this::deliver);
+        }
+
+        synchronized void close() {
+            closed = true;
+            pending.clear();
+        }
+
+        private void deliver() {
+            while (true) {
+                Event event;
+                synchronized (this) {
+                    event = closed ? null : pending.poll();
+                    if (event == null) {
+                        delivering = false;
+                        return;
+                    }
+                }
+                try {
+                    consumer.accept(event);
+                } catch (RuntimeException e) {
+                    log.debug("agent: Removing subscriber of job {}: {}", id, e.getMessage());
+                    close();
+                    unsubscribe(consumer);
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package ch.erni.ai.demo.cv.rag.agent;
+
+public class AgentJobNotFoundException extends RuntimeException {
+
+    public AgentJobNotFoundException(String jobId) {
+        super("Agent job not found: " + jobId);
+    }
+}
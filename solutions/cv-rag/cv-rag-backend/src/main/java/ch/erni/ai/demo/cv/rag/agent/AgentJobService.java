@@ -0,0 +1,125 @@
+package ch.erni.ai.demo.cv.rag.agent;
+
+import ch.erni.ai.demo.cv.rag.config.AgentConfig;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs agent chats as background jobs, one virtual thread per job.
+ * <p>
+ * At most {@code application.agent.jobs.max-running} jobs run at the same time, the others wait in status QUEUED
+ * without holding a platform thread. Finished jobs are kept for the configured retention and then forgotten, they
+ * are purged once a minute.
+ */
+@Slf4j
+@Service
+public class AgentJobService {
+
+    private static final Duration PURGE_INTERVAL = Duration.ofMinutes(1);
+
+    private final CVAgentService cvAgentService;
+    private final Semaphore running;
+    private final Duration retention;
+    private final Map<String, AgentJob> jobs = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("agent-job-", 0).factory());
+    private final ScheduledExecutorService purge = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("agent-job-purge").factory());
+
+    public AgentJobService(CVAgentService cvAgentService, AgentConfig config) {
+        this.cvAgentService = cvAgentService;
+        this.running = new Semaphore(config.getJobs().getMaxRunning());
+        this.retention = config.getJobs().getRetention();
+        purge.scheduleWithFixedDelay(this::removeExpiredJobs, PURGE_INTERVAL.toMillis(), PURGE_INTERVAL.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Submits the question to the agent and returns immediately.
+     *
+     * @param sessionId session of a previous chat to continue, null for a new session that ends with the job
+     */
+    public AgentJob submit(String question, String sessionId) {
+        AgentJob job = new AgentJob(UUID.randomUUID().toString(), question, sessionId);
+        jobs.put(job.getId(), job);
+        executor.execute(() -> run(job));
+        log.info("agent: Submitted job {}", job.getId());
+        return job;
+    }
+
+    public AgentJob getJob(String jobId) {
+        AgentJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new AgentJobNotFoundException(jobId);
+        }
+        return job;
+    }
+
+    /**
+     * @return false if the job was already finished
+     */
+    public boolean cancel(String jobId) {
+        boolean cancelled = getJob(jobId).cancel();
+        if (cancelled) {
+            log.info("agent: Cancelling job {}", jobId);
+        }
+        return cancelled;
+    }
+
+    private void run(AgentJob job) {
+        String session = job.getSessionId() != null ? job.getSessionId() : job.getId();
+        try {
+            job.attach(Thread.currentThread());
+            running.acquire();
+            try {
+                job.started();
+                job.succeeded(cvAgentService.chat(session, job.getQuestion(), job));
+            } finally {
+                running.release();
+            }
+        } catch (InterruptedException | CancellationException e) {
+            job.cancelled();
+        } catch (Exception e) {
+            if (job.isCancelRequested()) {
+                // the interrupt surfaced as a failure of the model or tool call
+                job.cancelled();
+            } else {
+                log.error("agent: Job {} failed", job.getId(), e);
+                job.failed(e);
+            }
+        } finally {
+            if (job.getSessionId() == null) {
+                cvAgentService.endSession(session);
+            }
+            log.info("agent: Job {} finished with status {}", job.getId(), job.getStatus());
+        }
+    }
+
+    private void removeExpiredJobs() {
+        Instant expired = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> {
+            Instant finishedAt = job.getFinishedAt();
+            return finishedAt != null && finishedAt.isBefore(expired);
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        purge.shutdownNow();
+        jobs.values().forEach(AgentJob::cancel);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,29 @@
+package ch.erni.ai.demo.cv.rag.agent;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.model.output.TokenUsage;
+
+/**
+ * Receives the progress of an agent chat, called on the thread running the chat.
+ */
+public interface AgentProgressListener {
+
+    AgentProgressListener NONE = new AgentProgressListener() {
+    };
+
+    /**
+     * Called before every request to the chat model, throw to abort the chat.
+     */
+    default void beforeModelRequest() {
+    }
+
+    /**
+     * Called for every response of the chat model, either an intermediate message with tool calls or the answer.
+     */
+    default void onModelResponse(AiMessage message, TokenUsage tokenUsage) {
+    }
+
+    default void onToolResult(ToolExecutionResultMessage result) {
+    }
+}
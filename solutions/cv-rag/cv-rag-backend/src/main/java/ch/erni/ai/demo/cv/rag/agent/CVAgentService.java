@@ -0,0 +1,154 @@
+package ch.erni.ai.demo.cv.rag.agent;
+
+import ch.erni.ai.demo.cv.rag.config.AgentConfig;
+import ch.erni.ai.llm.service.ModelRegistry;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.langchain4j.mcp.McpToolProvider;
+import dev.langchain4j.mcp.client.McpClient;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.service.MemoryId;
+import dev.langchain4j.service.SystemMessage;
+import dev.langchain4j.service.UserMessage;
+import dev.langchain4j.service.tool.ToolProviderRequest;
+import dev.langchain4j.service.tool.ToolProviderResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * CV agent with a chat memory per session.
+ * <p>
+ * One assistant is built per chat model and shared by all sessions, the memory is selected by the session id.
+ * Chats of the same session run one after the other, as the chat memory is not thread safe.
+ * If Playwright is configured, every chat borrows an MCP client from the {@link McpClientPool} for its duration.
+ * Model responses, tool results and token usage are reported to the {@link AgentProgressListener} of the chat.
+ */
+@Slf4j
+@Service
+public class CVAgentService {
+
+    private static final String[] PLAYWRIGHT_TOOLS = {"browser_click", "browser_select_option",
+            "browser_press_key", "browser_type", "browser_close",
+            "browser_handle_dialog", "browser_navigate",
+            "browser_navigate_back", "browser_fill_form",
+            "browser_wait_for", "browser_tabs"};
+
+    public interface Assistant {
+
+        @SystemMessage("You are an assistant that can help with finding suitable CVs or answering questions about a CV or a list of CVs. You have several tools available to achieve those tasks." +
+                "Check the vector store first, if there is no result then use playwright to find the data on the web. Once you have enough information respond to the question.")
+        String chat(@MemoryId String sessionId, @UserMessage String userMessage);
+    }
+
+    private record Session(ChatMemory memory, ReentrantLock lock) {
+    }
+
+    private final ModelRegistry modelRegistry;
+    private final CVAgentTools tools;
+    private final McpClientPool mcpClientPool;
+    private final Cache<String, Session> sessions;
+    private final int memoryMaxMessages;
+    private final Map<String, Assistant> assistants = new ConcurrentHashMap<>();
+    // the MCP client borrowed for the chat running on this thread
+    private final ThreadLocal<McpClient> leasedClient = new ThreadLocal<>();
+    // the listener of the chat running on this thread
+    private final ThreadLocal<AgentProgressListener> progressListener = ThreadLocal.withInitial(() -> AgentProgressListener.NONE);
+
+    public CVAgentService(ModelRegistry modelRegistry, CVAgentTools tools, McpClientPool mcpClientPool, AgentConfig config) {
+        this.modelRegistry = modelRegistry;
+        this.tools = tools;
+        this.mcpClientPool = mcpClientPool;
+        this.sessions = Caffeine.newBuilder()
+                .expireAfterAccess(config.getSessionTimeout())
+                .maximumSize(config.getMaxSessions())
+                .build();
+        this.memoryMaxMessages = config.getMemoryMaxMessages();
+    }
+
+    public String chat(String sessionId, String question) throws InterruptedException {
+        return chat(sessionId, question, AgentProgressListener.NONE);
+    }
+
+    /**
+     * Waits while another chat of the session is running.
+     */
+    public String chat(String sessionId, String question, AgentProgressListener listener) throws InterruptedException {
+        ReentrantLock lock = session(sessionId).lock();
+        lock.lockInterruptibly();
+        progressListener.set(listener);
+        try {
+            return chatWithTools(sessionId, question);
+        } finally {
+            progressListener.remove();
+            lock.unlock();
+        }
+    }
+
+    private String chatWithTools(String sessionId, String question) throws InterruptedException {
+        Assistant assistant = assistants.computeIfAbsent(modelRegistry.getCurrentChatModelId(), this::createAssistant);
+        if (!mcpClientPool.isEnabled()) {
+            return chatAndLog(assistant, sessionId, question);
+        }
+        McpClient client = mcpClientPool.borrow();
+        boolean healthy = false;
+        leasedClient.set(client);
+        try {
+            String response = chatAndLog(assistant, sessionId, question);
+            healthy = true;
+            return response;
+        } finally {
+            leasedClient.remove();
+            mcpClientPool.release(client, healthy);
+        }
+    }
+
+    public void endSession(String sessionId) {
+        sessions.invalidate(sessionId);
+    }
+
+    private Session session(String sessionId) {
+        return sessions.get(sessionId, id -> new Session(
+                MessageWindowChatMemory.builder().id(id).maxMessages(memoryMaxMessages).build(), new ReentrantLock()));
+    }
+
+    private String chatAndLog(Assistant assistant, String sessionId, String question) {
+        var response = assistant.chat(sessionId, question);
+        Session session = sessions.getIfPresent(sessionId);
+        if (session != null) {
+            log.info("agent: Memory of session {}: {}", sessionId, session.memory().messages().stream()
+                    .map(Object::toString)
+                    .collect(Collectors.joining("\n")));
+        }
+        return response;
+    }
+
+    private Assistant createAssistant(String chatModelId) {
+        var builder = AiServices.builder(Assistant.class)
+                .chatModel(new ProgressReportingChatModel(modelRegistry.getChatLanguageModel(chatModelId), progressListener::get))
+                .tools(tools)
+                .chatMemoryProvider(sessionId -> session(String.valueOf(sessionId)).memory());
+        if (mcpClientPool.isEnabled()) {
+            builder.toolProvider(this::provideMcpTools);
+        }
+        return builder.build();
+    }
+
+    private ToolProviderResult provideMcpTools(ToolProviderRequest request) {
+        McpClient client = leasedClient.get();
+        if (client == null) {
+            return ToolProviderResult.builder().build();
+        }
+        return McpToolProvider.builder()
+                .mcpClients(client)
+                .filterToolNames(PLAYWRIGHT_TOOLS)
+                .build()
+                .provideTools(request);
+    }
+}
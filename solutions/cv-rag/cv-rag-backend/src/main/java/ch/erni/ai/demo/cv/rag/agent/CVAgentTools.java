@@ -0,0 +1,47 @@
+package ch.erni.ai.demo.cv.rag.agent;
+
+import ch.erni.ai.demo.cv.rag.rest.CVController;
+import ch.erni.ai.demo.cv.rag.rest.CVIngestorController.Namespace;
+import ch.erni.ai.demo.cv.rag.rest.VectorSearchController;
+import ch.erni.ai.demo.cv.rag.rest.model.SearchInput;
+import ch.erni.ai.demo.cv.service.CVService;
+import ch.erni.ai.demo.cv.service.ProfileNotFoundException;
+import dev.langchain4j.agent.tool.Tool;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tools of the CV agent, stateless and shared by all sessions.
+ */
+@Component
+@RequiredArgsConstructor
+public class CVAgentTools {
+
+    private final CVService cvService;
+    private final VectorSearchController vectorSearchController;
+
+    @Tool("Get a complete CV by id (number)")
+    public String getProfile(String id) {
+        if (id == null || id.isBlank()) {
+            return "Please specify an id! If you do not have an id then use the vectorsearch to find one.";
+        }
+        try {
+            var number = Integer.parseInt(id);
+            return cvService.getProfileAsMarkdown(String.valueOf(number));
+        } catch (NumberFormatException e) {
+            return "The Id must be a string representing a number. Like '1234'.";
+        } catch (ProfileNotFoundException e) {
+            return "There is no CV with id " + id + ". Use the vectorsearch to find one.";
+        }
+    }
+
+    @Tool("Search vector store by name")
+    public String searchVectorStoreByName(String query) {
+        return CVController.convertTextSegmentsToString(vectorSearchController.vectorSearch(Namespace.PROFILE_SUMMARY, new SearchInput(query, 10)));
+    }
+
+    @Tool("Search CV skills from a vectorstore")
+    public String searchCVsSkills(String query) {
+        return CVController.convertTextSegmentsToString(vectorSearchController.vectorSearch(Namespace.PROFILE_SKILLS, new SearchInput(query, 20)));
+    }
+}
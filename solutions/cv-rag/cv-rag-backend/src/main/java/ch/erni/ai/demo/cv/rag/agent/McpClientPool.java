@@ -0,0 +1,249 @@
+package ch.erni.ai.demo.cv.rag.agent;
+
+import ch.erni.ai.demo.cv.rag.config.AgentConfig;
+import ch.erni.ai.demo.cv.rag.config.PlayWrightConfig;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.mcp.client.DefaultMcpClient;
+import dev.langchain4j.mcp.client.McpClient;
+import dev.langchain4j.mcp.client.transport.McpTransport;
+import dev.langchain4j.mcp.client.transport.stdio.StdioMcpTransport;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of warmed up Playwright MCP clients.
+ * <p>
+ * Every client owns one MCP server process, so the pool bounds the number of processes to the maximum size.
+ * Idle clients are health checked periodically, clients idle for longer than the idle timeout are closed down
+ * to the minimum idle count, and all clients are closed on shutdown.
+ * The browser of a released client is closed, so the next chat does not see the pages of the previous one. Cookies
+ * and storage are only dropped with it if the server runs with an in-memory profile ("--isolated").
+ * Metrics: "mcp.pool.idle" and "mcp.pool.active" (gauges).
+ */
+@Slf4j
+@Component
+public class McpClientPool {
+
+    private record IdleClient(McpClient client, long idleSince) {
+    }
+
+    private final PlayWrightConfig playwrightConfig;
+    private final AgentConfig.McpPool config;
+    private final Semaphore permits;
+    // most recently returned first, so the clients at the end become idle and are evicted
+    private final Deque<IdleClient> idle = new ArrayDeque<>();
+    private final AtomicInteger clientNumber = new AtomicInteger();
+    private final ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("mcp-pool-maintenance").factory());
+    private volatile boolean closed;
+
+    public McpClientPool(PlayWrightConfig playwrightConfig, AgentConfig agentConfig, MeterRegistry meterRegistry) {
+        this.playwrightConfig = playwrightConfig;
+        this.config = agentConfig.getMcpPool();
+        this.permits = new Semaphore(config.getMaxSize());
+        Gauge.builder("mcp.pool.idle", this, McpClientPool::idleCount).register(meterRegistry);
+        Gauge.builder("mcp.pool.active", permits, p -> config.getMaxSize() - p.availablePermits()).register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return playwrightConfig.getCommand() != null;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!isEnabled()) {
+            log.info("No Playwright MCP command configured, MCP client pool is disabled");
+            return;
+        }
+        long interval = config.getHealthCheckInterval().toMillis();
+        // the first run fills the pool up to the minimum idle count
+        maintenance.scheduleWithFixedDelay(this::maintain, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a client, creating one if none is idle. Every borrowed client must be given back with {@link #release}.
+     *
+     * @throws IllegalStateException if the pool is exhausted for longer than the borrow timeout or closed
+     */
+    public McpClient borrow() throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("MCP client pool is closed");
+        }
+        if (!permits.tryAcquire(config.getBorrowTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException("No MCP client available within " + config.getBorrowTimeout());
+        }
+        try {
+            IdleClient idleClient;
+            synchronized (idle) {
+                idleClient = idle.pollFirst();
+            }
+            return idleClient != null ? idleClient.client() : create();
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @param healthy false if the client failed and must not be reused
+     */
+    public void release(McpClient client, boolean healthy) {
+        try {
+            if (healthy && resetBrowser(client)) {
+                synchronized (idle) {
+                    if (!closed) {
+                        idle.addFirst(new IdleClient(client, System.nanoTime()));
+                        return;
+                    }
+                }
+            }
+            closeQuietly(client);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * @return false if the browser could not be closed and the client must not be reused
+     */
+    private static boolean resetBrowser(McpClient client) {
+        try {
+            client.executeTool(ToolExecutionRequest.builder().name("browser_close").arguments("{}").build());
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Could not close the browser of MCP client {}: {}", client.key(), e.getMessage());
+            return false;
+        }
+    }
+
+    private McpClient create() {
+        List<String> command = new ArrayList<>();
+        command.add(playwrightConfig.getCommand());
+        if (playwrightConfig.getArgs() != null) command.addAll(playwrightConfig.getArgs());
+
+        McpTransport transport = new StdioMcpTransport.Builder()
+                .command(command)
+                .logEvents(true)
+                .build();
+        McpClient client = new DefaultMcpClient.Builder()
+                .key("PlaywrightMCP-" + clientNumber.incrementAndGet())
+                .transport(transport)
+                .cacheToolList(true)
+                .build();
+        try {
+            // warm up the tool list cache
+            client.listTools();
+        } catch (RuntimeException e) {
+            closeQuietly(client);
+            throw e;
+        }
+        log.info("Created MCP client {}", client.key());
+        return client;
+    }
+
+    private void maintain() {
+        try {
+            evictAndCheck();
+            while (!closed && idleCount() < config.getMinIdle() && permits.tryAcquire()) {
+                try {
+                    addIdle(new IdleClient(create(), System.nanoTime()));
+                } finally {
+                    permits.release();
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("MCP client pool maintenance failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Checks the idle clients, oldest first. Every client taken out of the pool holds a permit,
+     * so borrowers cannot create replacements beyond the maximum size meanwhile.
+     */
+    private void evictAndCheck() {
+        List<IdleClient> checked = new ArrayList<>();
+        int held = 0;
+        try {
+            while (!closed && permits.tryAcquire()) {
+                held++;
+                IdleClient idleClient;
+                synchronized (idle) {
+                    idleClient = idle.pollLast();
+                }
+                if (idleClient == null) {
+                    break;
+                }
+                boolean expired = System.nanoTime() - idleClient.idleSince() > config.getIdleTimeout().toNanos();
+                if (expired && idleCount() + checked.size() >= config.getMinIdle()) {
+                    log.info("Closing idle MCP client {}", idleClient.client().key());
+                    closeQuietly(idleClient.client());
+                    continue;
+                }
+                try {
+                    idleClient.client().checkHealth();
+                    checked.add(idleClient);
+                } catch (RuntimeException e) {
+                    log.warn("MCP client {} is unhealthy, closing it: {}", idleClient.client().key(), e.getMessage());
+                    closeQuietly(idleClient.client());
+                }
+            }
+        } finally {
+            // keep the order, the oldest client stays last
+            for (int i = checked.size() - 1; i >= 0; i--) {
+                addIdle(checked.get(i));
+            }
+            permits.release(held);
+        }
+    }
+
+    private void addIdle(IdleClient idleClient) {
+        synchronized (idle) {
+            if (!closed) {
+                idle.addLast(idleClient);
+                return;
+            }
+        }
+        closeQuietly(idleClient.client());
+    }
+
+    private int idleCount() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+
+    private static void closeQuietly(McpClient client) {
+        try {
+            client.close();
+        } catch (Exception e) {
+            log.warn("Could not close MCP client {}: {}", client.key(), e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        maintenance.shutdownNow();
+        List<IdleClient> remaining;
+        synchronized (idle) {
+            closed = true;
+            remaining = new ArrayList<>(idle);
+            idle.clear();
+        }
+        remaining.forEach(idleClient -> closeQuietly(idleClient.client()));
+    }
+}
@@ -0,0 +1,63 @@
+package ch.erni.ai.demo.cv.rag.agent;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.model.ModelProvider;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Chat model that reports every round trip of an agent to the {@link AgentProgressListener} of the current chat.
+ * <p>
+ * The results of the tools executed since the last response are the trailing tool result messages of the next
+ * request, so they are reported right before it is sent.
+ */
+class ProgressReportingChatModel implements ChatModel {
+
+    private final ChatModel delegate;
+    private final Supplier<AgentProgressListener> listener;
+
+    ProgressReportingChatModel(ChatModel delegate, Supplier<AgentProgressListener> listener) {
+        this.delegate = delegate;
+        this.listener = listener;
+    }
+
+    @Override
+    public ChatResponse chat(ChatRequest request) {
+        AgentProgressListener progress = listener.get();
+        progress.beforeModelRequest();
+        List<ChatMessage> messages = request.messages();
+        int firstResult = messages.size();
+        while (firstResult > 0 && messages.get(firstResult - 1) instanceof ToolExecutionResultMessage) {
+            firstResult--;
+        }
+        for (ChatMessage message : messages.subList(firstResult, messages.size())) {
+            progress.onToolResult((ToolExecutionResultMessage) message);
+        }
+        ChatResponse response = delegate.chat(request);
+        progress.onModelResponse(response.aiMessage(), response.tokenUsage());
+        return response;
+    }
+
+    @Override
+    public ChatRequestParameters defaultRequestParameters() {
+        return delegate.defaultRequestParameters();
+    }
+
+    @Override
+    public ModelProvider provider() {
+        return delegate.provider();
+    }
+
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        return delegate.supportedCapabilities();
+    }
+}
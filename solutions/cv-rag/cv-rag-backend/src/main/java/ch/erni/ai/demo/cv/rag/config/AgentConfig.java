@@ -0,0 +1,50 @@
+package ch.erni.ai.demo.cv.rag.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "application.agent")
+@Data
+public class AgentConfig {
+
+    /**
+     * Pool of Playwright MCP clients, each client owns one MCP server process.
+     */
+    @Data
+    public static class McpPool {
+        private int minIdle = 1;
+        private int maxSize = 4;
+        private Duration idleTimeout = Duration.ofMinutes(10);
+        private Duration healthCheckInterval = Duration.ofMinutes(1);
+        private Duration borrowTimeout = Duration.ofSeconds(30);
+    }
+
+    /**
+     * Agent chats running in the background, see the job endpoints of the CV controller.
+     */
+    @Data
+    public static class Jobs {
+        /**
+         * Maximum number of jobs running at the same time, further jobs stay queued.
+         */
+        private int maxRunning = 16;
+        /**
+         * Finished jobs can be polled for this time.
+         */
+        private Duration retention = Duration.ofMinutes(30);
+        private Duration sseTimeout = Duration.ofMinutes(30);
+    }
+
+    private int memoryMaxMessages = 10;
+    /**
+     * Conversations without a message for this time are forgotten.
+     */
+    private Duration sessionTimeout = Duration.ofMinutes(30);
+    private long maxSessions = 1000;
+    private McpPool mcpPool = new McpPool();
+    private Jobs jobs = new Jobs();
+}
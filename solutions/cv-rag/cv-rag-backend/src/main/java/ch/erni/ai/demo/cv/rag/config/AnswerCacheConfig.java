@@ -0,0 +1,20 @@
+package ch.erni.ai.demo.cv.rag.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "application.answer-cache")
+@Data
+public class AnswerCacheConfig {
+    private boolean enabled = true;
+    /**
+     * Minimum cosine similarity between two questions to reuse an answer.
+     */
+    private double similarityThreshold = 0.95;
+    private Duration ttl = Duration.ofHours(1);
+    private long maxSize = 1000;
+}
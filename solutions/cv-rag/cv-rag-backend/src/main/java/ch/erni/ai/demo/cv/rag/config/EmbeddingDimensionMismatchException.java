@@ -0,0 +1,11 @@
+package ch.erni.ai.demo.cv.rag.config;
+
+/**
+ * The dimension of the embeddings does not match the vector column of the table, e.g. after switching to an
+ * embedding model with another dimension. The namespace has to be deleted and ingested again.
+ */
+public class EmbeddingDimensionMismatchException extends RuntimeException {
+    public EmbeddingDimensionMismatchException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,49 @@
+package ch.erni.ai.demo.cv.rag.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "application.ingestion")
+@Data
+public class IngestionConfig {
+
+    /**
+     * Maximum number of concurrent requests per pipeline stage.
+     */
+    @Data
+    public static class Concurrency {
+        private int load = 4;
+        private int render = 2;
+        private int split = 4;
+        private int embed = 2;
+        private int store = 4;
+    }
+
+    @Data
+    public static class Retry {
+        private int maxAttempts = 3;
+        private Duration initialBackoff = Duration.ofSeconds(2);
+        private Duration maxBackoff = Duration.ofSeconds(30);
+    }
+
+    /**
+     * Limits of a single request to the embedding model.
+     */
+    @Data
+    public static class EmbedBatch {
+        private int maxTokens = 16384;
+        private int maxSegments = 64;
+    }
+
+    /**
+     * Maximum number of profiles in the pipeline at the same time, further profiles wait until one is done.
+     */
+    private int maxInFlight = 8;
+    private Concurrency concurrency = new Concurrency();
+    private Retry retry = new Retry();
+    private EmbedBatch embedBatch = new EmbedBatch();
+}
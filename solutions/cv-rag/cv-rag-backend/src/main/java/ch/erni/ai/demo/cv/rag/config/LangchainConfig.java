@@ -3,12 +3,17 @@ package ch.erni.ai.demo.cv.rag.config;
 import dev.langchain4j.http.client.spring.restclient.SpringRestClientBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 
 @Configuration
 public class LangchainConfig {
 
     @Bean
     public SpringRestClientBuilder springRestClientBuilder() {
-        return new SpringRestClientBuilder();
+        // streamed responses are read on virtual threads, one per open stream
+        SimpleAsyncTaskExecutor streamingExecutor = new SimpleAsyncTaskExecutor("llm-stream-");
+        streamingExecutor.setVirtualThreads(true);
+        return new SpringRestClientBuilder()
+                .streamingRequestExecutor(streamingExecutor);
     }
 }
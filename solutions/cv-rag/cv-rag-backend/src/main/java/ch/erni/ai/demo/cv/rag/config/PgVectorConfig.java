@@ -0,0 +1,36 @@
+package ch.erni.ai.demo.cv.rag.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+@ConfigurationProperties(prefix = "application.vector-store.pgvector")
+@Data
+public class PgVectorConfig {
+
+    @Data
+    public static class Pool {
+        private int maxSize = 10;
+        private int minIdle = 2;
+        private Duration connectionTimeout = Duration.ofSeconds(5);
+        private Duration idleTimeout = Duration.ofMinutes(10);
+        private Duration maxLifetime = Duration.ofMinutes(30);
+    }
+
+    private String host;
+    private int port;
+    private String user;
+    private String password;
+    private String database;
+    private Pool pool = new Pool();
+
+    /**
+     * Tables whose embedding stores are created at startup, so the first search does not pay for it.
+     */
+    private List<String> warmUpTables = new ArrayList<>();
+}
@@ -0,0 +1,113 @@
+package ch.erni.ai.demo.cv.rag.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pgvector.PGvector;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.pgvector.PgVectorEmbeddingStore;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * PgVectorEmbeddingStore on a shared connection pool.
+ * The base class issues "CREATE EXTENSION IF NOT EXISTS vector" on every borrowed connection,
+ * the extension is created once by the {@link VectorStoreFactory} instead.
+ * <p>
+ * The metadata is stored in the default JSON column "metadata", the profile operations query it directly.
+ */
+class PooledPgVectorEmbeddingStore extends PgVectorEmbeddingStore implements ProfileEmbeddingStore {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    PooledPgVectorEmbeddingStore(DataSource dataSource, String table, int dimension) {
+        super(dataSource, table, dimension, false, null, true, false, null);
+    }
+
+    @Override
+    protected Connection getConnection() throws SQLException {
+        Connection connection = this.datasource.getConnection();
+        try {
+            PGvector.addVectorType(connection);
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+
+    @Override
+    public Map<String, String> findContentHashes() {
+        String sql = String.format("SELECT metadata->>'%s', MIN(metadata->>'%s') FROM %s GROUP BY 1",
+                PROFILE_ID, CONTENT_HASH, table);
+        Map<String, String> hashes = new HashMap<>();
+        try (Connection connection = getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            while (resultSet.next()) {
+                String profileId = resultSet.getString(1);
+                if (profileId != null) {
+                    hashes.put(profileId, resultSet.getString(2));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not read content hashes of " + table, e);
+        }
+        return hashes;
+    }
+
+    @Override
+    public void replaceProfile(String profileId, List<Embedding> embeddings, List<TextSegment> segments) {
+        if (embeddings.size() != segments.size()) {
+            throw new IllegalArgumentException("embeddings and segments must have the same size");
+        }
+        String delete = String.format("DELETE FROM %s WHERE metadata->>'%s' = ?", table, PROFILE_ID);
+        String insert = String.format("INSERT INTO %s (embedding_id, embedding, text, metadata) VALUES (?, ?, ?, ?)", table);
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement deleteStatement = connection.prepareStatement(delete);
+                 PreparedStatement insertStatement = connection.prepareStatement(insert)) {
+                deleteStatement.setString(1, profileId);
+                deleteStatement.executeUpdate();
+                for (int i = 0; i < segments.size(); i++) {
+                    insertStatement.setObject(1, UUID.randomUUID());
+                    insertStatement.setObject(2, new PGvector(embeddings.get(i).vector()));
+                    insertStatement.setString(3, segments.get(i).text());
+                    insertStatement.setObject(4, OBJECT_MAPPER.writeValueAsString(segments.get(i).metadata().toMap()), Types.OTHER);
+                    insertStatement.addBatch();
+                }
+                insertStatement.executeBatch();
+                connection.commit();
+            } catch (SQLException | JsonProcessingException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException | JsonProcessingException e) {
+            throw new IllegalStateException("Could not replace profile " + profileId + " in " + table, e);
+        }
+    }
+
+    @Override
+    public int removeProfile(String profileId) {
+        String sql = String.format("DELETE FROM %s WHERE metadata->>'%s' = ?", table, PROFILE_ID);
+        try (Connection connection = getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, profileId);
+            return statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not remove profile " + profileId + " from " + table, e);
+        }
+    }
+}
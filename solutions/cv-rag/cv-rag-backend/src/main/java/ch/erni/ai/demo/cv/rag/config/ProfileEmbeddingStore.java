@@ -0,0 +1,34 @@
+package ch.erni.ai.demo.cv.rag.config;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Embedding store whose chunks belong to a CV profile.
+ * Every chunk carries the profile id and the hash of the content it was created from in its metadata,
+ * so the chunks of a profile can be replaced or removed as a whole.
+ */
+public interface ProfileEmbeddingStore extends EmbeddingStore<TextSegment> {
+
+    String PROFILE_ID = "id";
+    String CONTENT_HASH = "content_hash";
+
+    /**
+     * @return the content hash of every profile in the store by profile id, null for chunks stored without a hash
+     */
+    Map<String, String> findContentHashes();
+
+    /**
+     * Replaces all chunks of the profile in a single transaction.
+     */
+    void replaceProfile(String profileId, List<Embedding> embeddings, List<TextSegment> segments);
+
+    /**
+     * @return the number of removed chunks
+     */
+    int removeProfile(String profileId);
+}
@@ -0,0 +1,15 @@
+package ch.erni.ai.demo.cv.rag.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "application.query-embedding-cache")
+@Data
+public class QueryEmbeddingCacheConfig {
+    private long maxSize = 10_000;
+    private Duration expireAfterAccess = Duration.ofHours(6);
+}
@@ -1,39 +1,191 @@
 package ch.erni.ai.demo.cv.rag.config;
 
-import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.pgvector.PgVectorEmbeddingStore;
-import org.springframework.beans.factory.annotation.Value;
+import ch.erni.ai.llm.service.ModelRegistry;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of long-lived embedding stores, one per table, all sharing one bounded connection pool.
+ * Pool metrics are published as "hikaricp.*" meters.
+ * <p>
+ * A store is only handed out for the dimension of its table: an existing table is checked against the
+ * dimension of its vector column, so embeddings of another model are rejected instead of failing in the database.
+ * Dropping the table of a namespace frees it for a model with another dimension.
+ */
+@Slf4j
 @Component
 public class VectorStoreFactory {
 
-    @Value("${application.vector_store.pgvector.host}")
-    private String pghost;
-    @Value("${application.vector_store.pgvector.port}")
-    private int pgport;
-    @Value("${application.vector_store.pgvector.user}")
-    private String pguser;
-    @Value("${application.vector_store.pgvector.password}")
-    private String pgpassword;
-    @Value("${application.vector_store.pgvector.database}")
-    private String pgdatabase;
-
-
-
-    public EmbeddingStore<TextSegment> createEmbeddingStore(String table, int dimensions) {
-        EmbeddingStore<TextSegment> embeddingStore = PgVectorEmbeddingStore.builder()
-                //.createTable(true)
-                .host(this.pghost)
-                .port(this.pgport)
-                .database(this.pgdatabase)
-                .user(this.pguser)
-                .password(this.pgpassword)
-                .dimension(dimensions)//768, 1024
-                .table(table)
-                .build();
-        return embeddingStore;
+    private record RegisteredStore(int dimensions, ProfileEmbeddingStore store) {
+    }
+
+    private final PgVectorConfig config;
+    private final ModelRegistry modelRegistry;
+    private final HikariDataSource dataSource;
+    private final Map<String, RegisteredStore> stores = new ConcurrentHashMap<>();
+    private volatile boolean vectorExtensionCreated;
+
+    public VectorStoreFactory(PgVectorConfig config, ModelRegistry modelRegistry, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.modelRegistry = modelRegistry;
+        this.dataSource = createDataSource(config, meterRegistry);
+    }
+
+    private static HikariDataSource createDataSource(PgVectorConfig config, MeterRegistry meterRegistry) {
+        HikariConfig hikari = new HikariConfig();
+        hikari.setPoolName("pgvector");
+        hikari.setJdbcUrl("jdbc:postgresql://" + config.getHost() + ":" + config.getPort() + "/" + config.getDatabase());
+        hikari.setUsername(config.getUser());
+        hikari.setPassword(config.getPassword());
+        hikari.setMaximumPoolSize(config.getPool().getMaxSize());
+        hikari.setMinimumIdle(config.getPool().getMinIdle());
+        hikari.setConnectionTimeout(config.getPool().getConnectionTimeout().toMillis());
+        hikari.setIdleTimeout(config.getPool().getIdleTimeout().toMillis());
+        hikari.setMaxLifetime(config.getPool().getMaxLifetime().toMillis());
+        // start even if the database is not up yet, connections are established on demand
+        hikari.setInitializationFailTimeout(-1);
+        hikari.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        return new HikariDataSource(hikari);
     }
 
+    /**
+     * @throws EmbeddingDimensionMismatchException if the table holds embeddings with another dimension
+     */
+    public ProfileEmbeddingStore getEmbeddingStore(String table, int dimensions) {
+        RegisteredStore registered = stores.computeIfAbsent(table, t -> {
+            ensureVectorExtension();
+            tableDimension(t).ifPresent(existing -> checkDimension(t, existing, dimensions));
+            log.info("Registering embedding store for table {} with {} dimensions", t, dimensions);
+            return new RegisteredStore(dimensions, new PooledPgVectorEmbeddingStore(dataSource, t, dimensions));
+        });
+        checkDimension(table, registered.dimensions(), dimensions);
+        return registered.store();
+    }
+
+    /**
+     * @return the store of the table with the dimension it already has, e.g. to remove embeddings of a previous
+     * model, empty if the table does not exist
+     */
+    public Optional<ProfileEmbeddingStore> getEmbeddingStore(String table) {
+        RegisteredStore registered = stores.get(table);
+        if (registered != null) {
+            return Optional.of(registered.store());
+        }
+        OptionalInt dimensions = tableDimension(table);
+        return dimensions.isPresent() ? Optional.of(getEmbeddingStore(table, dimensions.getAsInt())) : Optional.empty();
+    }
+
+    /**
+     * Drops the table with all its embeddings, the next ingestion creates it with the dimension of the model then.
+     */
+    public void dropTable(String table) {
+        // within compute, so the store is not registered again while the table is dropped
+        stores.compute(table, (t, registered) -> {
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement("SELECT to_regclass(?)::text")) {
+                statement.setString(1, t);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    // the name quoted as needed, null if the table does not exist
+                    if (resultSet.next() && resultSet.getString(1) != null) {
+                        try (Statement drop = connection.createStatement()) {
+                            drop.executeUpdate("DROP TABLE " + resultSet.getString(1));
+                        }
+                        log.info("Dropped embedding table {}", t);
+                    }
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException("Could not drop table " + t, e);
+            }
+            return null;
+        });
+    }
+
+    private static void checkDimension(String table, int existing, int requested) {
+        if (existing != requested) {
+            throw new EmbeddingDimensionMismatchException("Table " + table + " holds embeddings with " + existing
+                    + " dimensions, the embedding model has " + requested
+                    + ". Delete the namespace and ingest it again with the current model.");
+        }
+    }
+
+    /**
+     * @return the dimension of the vector column of the table, empty if the table does not exist yet
+     */
+    private OptionalInt tableDimension(String table) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT atttypmod FROM pg_attribute WHERE attrelid = to_regclass(?) AND attname = 'embedding'")) {
+            statement.setString(1, table);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                // the type modifier of a vector column is its dimension, -1 if none was declared
+                if (resultSet.next() && resultSet.getInt(1) > 0) {
+                    return OptionalInt.of(resultSet.getInt(1));
+                }
+                return OptionalInt.empty();
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not read the dimension of table " + table, e);
+        }
+    }
+
+    /**
+     * Registers the warm-up tables with the dimension of the current embedding model, tables that do not exist yet
+     * are created with it.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try (Connection connection = dataSource.getConnection()) {
+            log.info("pgvector pool connected to {}", connection.getMetaData().getURL());
+            int dimensions = modelRegistry.getEmbeddingConfiguration().embeddingModel().dimension();
+            for (String table : config.getWarmUpTables()) {
+                try {
+                    getEmbeddingStore(table, dimensions);
+                } catch (EmbeddingDimensionMismatchException e) {
+                    log.warn("Not warming up table {}: {}", table, e.getMessage());
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Could not warm up pgvector stores, they are created on first use: {}", e.getMessage());
+        }
+    }
+
+    private void ensureVectorExtension() {
+        if (vectorExtensionCreated) {
+            return;
+        }
+        synchronized (this) {
+            if (vectorExtensionCreated) {
+                return;
+            }
+            try (Connection connection = dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.executeUpdate("CREATE EXTENSION IF NOT EXISTS vector");
+                vectorExtensionCreated = true;
+            } catch (SQLException e) {
+                throw new IllegalStateException("Could not create vector extension", e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        dataSource.close();
+    }
 }
@@ -0,0 +1,82 @@
+package ch.erni.ai.demo.cv.rag.rest;
+
+import ch.erni.ai.demo.cv.rag.agent.AgentJob;
+import ch.erni.ai.demo.cv.rag.agent.AgentJobService;
+import ch.erni.ai.demo.cv.rag.config.AgentConfig;
+import ch.erni.ai.demo.cv.rag.rest.model.AgentJobRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * Agent chats as background jobs: submit a question, then poll the job or subscribe to its events until it is
+ * finished. See {@link AgentJob} for the events.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/cv/agent/jobs")
+@RequiredArgsConstructor
+public class AgentJobController {
+
+    private final AgentJobService agentJobService;
+    private final AgentConfig agentConfig;
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public AgentJob.Snapshot submit(@RequestBody AgentJobRequest request) {
+        return agentJobService.submit(request.getQuestion(), request.getSessionId()).snapshot(-1);
+    }
+
+    /**
+     * Returns the state of the job with the events after {@code since}, pass the sequence of the last seen event
+     * to only get new ones.
+     */
+    @GetMapping("/{jobId}")
+    public AgentJob.Snapshot getJob(@PathVariable String jobId,
+                                    @RequestParam(name = "since", defaultValue = "-1") int since) {
+        return agentJobService.getJob(jobId).snapshot(since);
+    }
+
+    /**
+     * Streams all events of the job, including the ones that already happened, and completes when the job is finished.
+     */
+    @GetMapping(value = "/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEvents(@PathVariable String jobId) {
+        AgentJob job = agentJobService.getJob(jobId);
+        SseEmitter emitter = new SseEmitter(agentConfig.getJobs().getSseTimeout().toMillis());
+        Consumer<AgentJob.Event> subscriber = event -> {
+            try {
+                emitter.send(SseEmitter.event()
+                        .id(String.valueOf(event.sequence()))
+                        .name(event.type())
+                        .data(event));
+            } catch (IOException e) {
+                // the job removes the subscriber, the client went away
+                throw new UncheckedIOException(e);
+            }
+            if (event.data().get("status") instanceof AgentJob.Status status && status.isFinished()) {
+                emitter.complete();
+            }
+        };
+        emitter.onTimeout(() -> {
+            job.unsubscribe(subscriber);
+            emitter.complete();
+        });
+        emitter.onError(e -> job.unsubscribe(subscriber));
+        job.subscribe(subscriber);
+        return emitter;
+    }
+
+    @DeleteMapping("/{jobId}")
+    public AgentJob.Snapshot cancel(@PathVariable String jobId) {
+        agentJobService.cancel(jobId);
+        return agentJobService.getJob(jobId).snapshot(-1);
+    }
+}
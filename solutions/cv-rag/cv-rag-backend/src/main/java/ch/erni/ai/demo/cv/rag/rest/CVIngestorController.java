@@ -1,23 +1,25 @@
 package ch.erni.ai.demo.cv.rag.rest;
 
-import ch.erni.ai.demo.cv.model.Profile;
 import ch.erni.ai.demo.cv.rag.config.VectorStoreFactory;
 import ch.erni.ai.demo.cv.rag.service.LanguageModelService;
+import ch.erni.ai.demo.cv.rag.service.ProfileIngestionPipeline;
+import ch.erni.ai.demo.cv.rag.service.PromptRegistry;
+import ch.erni.ai.demo.cv.rag.service.SemanticAnswerCache;
 import ch.erni.ai.demo.cv.service.CVService;
 import ch.erni.ai.llm.service.ModelRegistry;
-import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.Metadata;
+import ch.erni.ai.llm.service.TokenOffsetEstimator;
+import ch.erni.ai.llm.service.TokenWindowSplitter;
+import dev.langchain4j.data.document.DocumentSplitter;
 import dev.langchain4j.data.document.splitter.DocumentSplitters;
-import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
+import dev.langchain4j.model.TokenCountEstimator;
 import lombok.*;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
 
 @Slf4j
 @RestController
@@ -26,8 +28,6 @@ import java.util.concurrent.atomic.AtomicInteger;
 @RequiredArgsConstructor
 public class CVIngestorController {
 
-    private final static int DIMENSIONS = 768;
-
     public enum Namespace {
         PROFILE_FULL("profile_full"),
         PROFILE_SUMMARY("profile_summary"),
@@ -49,7 +49,10 @@ public class CVIngestorController {
     private final ModelRegistry modelRegistry;
     private final VectorStoreFactory vectorStoreFactory;
     private final LanguageModelService languageModelService;
+    private final PromptRegistry promptRegistry;
+    private final ProfileIngestionPipeline ingestionPipeline;
     private final CVService cvService;
+    private final SemanticAnswerCache answerCache;
 
 
     @NoArgsConstructor
@@ -61,109 +64,74 @@ public class CVIngestorController {
         public String table;
     }
 
-    @SneakyThrows
     @PostMapping("/profiles/vs/import/ingestor/full")
     public List<VectorStoreIngestionResult> ingestFullProfilesInVS(
+            @RequestParam(name = "force", defaultValue = "false") boolean force
     ) {
-        val embeddingModel = this.modelRegistry.getCurrentEmbeddingModel();
-        val tokenCountEstimator = this.modelRegistry.getTokenCountEstimatorEmbeddingModel();
-        EmbeddingStoreIngestor ingestorFull = EmbeddingStoreIngestor.builder()
-                .embeddingModel(embeddingModel)
-                .embeddingStore(vectorStoreFactory.createEmbeddingStore(Namespace.PROFILE_FULL.getType(), DIMENSIONS))
-                .documentSplitter(
-                        DocumentSplitters.recursive(8192, 800,
-                                tokenCountEstimator
-                        )
-                )
-
-                .build();
-
-        return ingestProfiles(Namespace.PROFILE_FULL.getType(), ingestorFull);
+        return ingestProfiles(Namespace.PROFILE_FULL, id -> "passage:" + cvService.getProfileAsMarkdown(id), UnaryOperator.identity(), "", force);
     }
 
-    @SneakyThrows
     @PostMapping("/profiles/vs/import/ingestor/summary")
     public List<VectorStoreIngestionResult> ingestSummaryProfilesInVS(
+            @RequestParam(name = "force", defaultValue = "false") boolean force
     ) {
-        val tokenCountEstimator = this.modelRegistry.getTokenCountEstimatorEmbeddingModel();
-        EmbeddingStoreIngestor ingestorSummary = EmbeddingStoreIngestor.builder()
-                .embeddingModel(modelRegistry.getCurrentEmbeddingModel())
-                .embeddingStore(vectorStoreFactory.createEmbeddingStore(Namespace.PROFILE_SUMMARY.getType(), DIMENSIONS))
-                .documentTransformer((document -> {
-                    return Document.document(summarizeCV(modelRegistry.getCurrentChatModelId(), document.text()), document.metadata());
-                }))
-                .documentSplitter(DocumentSplitters.recursive(8192, 800,
-                        tokenCountEstimator))
-                .build();
-
-        return ingestProfiles(Namespace.PROFILE_SUMMARY.getType(), ingestorSummary);
+        val chatModelId = modelRegistry.getCurrentChatModelId();
+        val summaryPrompt = promptRegistry.get("cv_summary_prompt").getSource();
+        return ingestProfiles(Namespace.PROFILE_SUMMARY, id -> "passage:" + cvService.getProfileAsMarkdown(id),
+                cvContent -> summarizeCV(chatModelId, cvContent), chatModelId + "\n" + summaryPrompt, force);
     }
 
-    @SneakyThrows
     @PostMapping("/profiles/vs/import/ingestor/skills")
     public List<VectorStoreIngestionResult> ingestSkillsInVS(
+            @RequestParam(name = "force", defaultValue = "false") boolean force
     ) {
-        val tokenCountEstimator = this.modelRegistry.getTokenCountEstimatorEmbeddingModel();
-        EmbeddingStoreIngestor ingestor = EmbeddingStoreIngestor.builder()
-                .embeddingModel(modelRegistry.getCurrentEmbeddingModel())
-                .embeddingStore(vectorStoreFactory.createEmbeddingStore(Namespace.PROFILE_SKILLS.getType(), DIMENSIONS))
-                .documentTransformer((document -> {
-                    Profile p = cvService.getProfile(document.metadata().getString("id"));
-                    return Document.document(p.skillsToMarkDown(), document.metadata());
-                }))
-                .documentSplitter(DocumentSplitters.recursive(8192, 800, tokenCountEstimator))
-                .build();
-
-        return ingestProfiles(Namespace.PROFILE_SKILLS.getType(), ingestor);
+        return ingestProfiles(Namespace.PROFILE_SKILLS, cvService::getSkillsAsMarkdown, UnaryOperator.identity(), "", force);
     }
 
-    @SneakyThrows
     @PostMapping("/profiles/vs/import/projects")
     public List<VectorStoreIngestionResult> ingestProjectsInVS(
+            @RequestParam(name = "force", defaultValue = "false") boolean force
     ) {
-        var tokenCountEstimator = this.modelRegistry.getTokenCountEstimatorEmbeddingModel();
-        EmbeddingStoreIngestor ingestor = EmbeddingStoreIngestor.builder()
-                .embeddingModel(modelRegistry.getCurrentEmbeddingModel())
-                .embeddingStore(vectorStoreFactory.createEmbeddingStore(Namespace.PROFILE_PROJECTS.getType(), DIMENSIONS))
-                .documentTransformer((document -> {
-                    Profile p = cvService.getProfile(document.metadata().getString("id"));
-                    return Document.document(p.projectsToMarkDown(), document.metadata());
-                }))
-                .documentSplitter(DocumentSplitters.recursive(8192, 800,
-                        tokenCountEstimator))
-                .build();
-
-        return ingestProfiles(Namespace.PROFILE_PROJECTS.getType(), ingestor);
+        return ingestProfiles(Namespace.PROFILE_PROJECTS, cvService::getProjectsAsMarkdown, UnaryOperator.identity(), "", force);
     }
 
+    /**
+     * Only profiles whose rendered content, embedding model or transformation changed are embedded again.
+     * The whole ingestion uses one embedding model and its tokenizer, even if the model is switched meanwhile.
+     *
+     * @param transformation identifies the model and prompt of the transformer, empty if the content is embedded as is
+     */
     @NotNull
-    private List<VectorStoreIngestionResult> ingestProfiles(String name, EmbeddingStoreIngestor ingestorSummary) {
-        List<VectorStoreIngestionResult> ingestionResults = new ArrayList<>();
-        final AtomicInteger current = new AtomicInteger(0);
-        final AtomicInteger errors = new AtomicInteger(0);
-        var profiles = cvService.getProfiles();
-
-        //sequentially otherwise we just get timeouts on local machine
-        profiles.forEach(profileShort -> {
-            try {
-                String md = cvService.getProfileAsMarkdown(profileShort.id);
-                var map = Map.of("id", profileShort.id, "name", profileShort.name);
-                Document doc = Document.document("passage:" + md, Metadata.from(map));
-                var ingestionSummary = ingestorSummary.ingest(doc);
-                ingestionResults.add(new VectorStoreIngestionResult(ingestionSummary.tokenUsage().totalTokenCount(), profileShort.id, profileShort.name, Namespace.PROFILE_SUMMARY.getType()));
-                log.info("{}: Ingested profile {} of {}. {}: {}", name, current.incrementAndGet(), profiles.size(), profileShort.id, profileShort.name);
-            } catch (Exception e) {
-                errors.incrementAndGet();
-                log.error("{}: Error while ingesting profile {}: {}", name, profileShort.id, profileShort.name, e);
-            }
-        });
-        if (errors.get() > 0) {
-            log.error("{}: {} profiles could not be ingested", name, errors.get());
-        }
-        return ingestionResults;
+    private List<VectorStoreIngestionResult> ingestProfiles(Namespace namespace, Function<String, String> renderer,
+                                                            UnaryOperator<String> transformer, String transformation,
+                                                            boolean force) {
+        val models = this.modelRegistry.getEmbeddingConfiguration();
+        val tokenCountEstimator = models.tokenCountEstimator();
+        var results = ingestionPipeline.ingest(
+                        namespace.getType(),
+                        models.embeddingModelId() + "\n" + transformation,
+                        renderer,
+                        transformer,
+                        splitter(tokenCountEstimator),
+                        models.embeddingModel(),
+                        tokenCountEstimator,
+                        vectorStoreFactory.getEmbeddingStore(namespace.getType(), models.embeddingModel().dimension()),
+                        force);
+        // cached answers may be based on chunks that were replaced or removed
+        answerCache.invalidate(namespace.getType());
+        return results.stream()
+                .map(result -> new VectorStoreIngestionResult(result.totalTokens(), result.id(), result.name(), namespace.getType()))
+                .toList();
     }
 
 
+    private static DocumentSplitter splitter(TokenCountEstimator tokenCountEstimator) {
+        if (tokenCountEstimator instanceof TokenOffsetEstimator tokenOffsetEstimator) {
+            return new TokenWindowSplitter(tokenOffsetEstimator, 8192, 800);
+        }
+        return DocumentSplitters.recursive(8192, 800, tokenCountEstimator);
+    }
+
     private String summarizeCV(String model, String cvContent) {
         return languageModelService.executeSimplePrompt(model, "cv_summary_prompt", new LanguageModelService.NameAndValue("cv_content", cvContent));
     }
@@ -178,10 +146,23 @@ public class CVIngestorController {
         deleteAll(namespace);
     }
 
+    @DeleteMapping("/profiles/vs/delete/{namespace}/{profileId}")
+    public int deleteProfileInNamespace(@PathVariable("namespace") Namespace namespace,
+                                        @PathVariable("profileId") String profileId) {
+        answerCache.invalidate(namespace.getType());
+        return vectorStoreFactory.getEmbeddingStore(namespace.getType())
+                .map(store -> store.removeProfile(profileId))
+                .orElse(0);
+    }
+
+    /**
+     * Drops the tables of the namespaces, so they can be ingested again with a model of another dimension.
+     */
     private void deleteAll(Namespace... namespaces) {
         for (var ns : namespaces) {
+            answerCache.invalidate(ns.getType());
             try {
-                vectorStoreFactory.createEmbeddingStore(ns.getType(), DIMENSIONS).removeAll();
+                vectorStoreFactory.dropTable(ns.getType());
             } catch (Exception e) {
                 log.error("Could not delete namespace {}", ns, e);
             }
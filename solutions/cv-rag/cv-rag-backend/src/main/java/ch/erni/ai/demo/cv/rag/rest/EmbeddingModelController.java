@@ -1,5 +1,6 @@
 package ch.erni.ai.demo.cv.rag.rest;
 
+import ch.erni.ai.demo.cv.rag.service.QueryEmbeddingCache;
 import ch.erni.ai.llm.service.LmStudioModelService;
 import ch.erni.ai.llm.service.ModelRegistry;
 import lombok.*;
@@ -11,6 +12,7 @@ import org.springframework.web.bind.annotation.*;
 public class EmbeddingModelController {
 
     private final ModelRegistry modelRegistry;
+    private final QueryEmbeddingCache queryEmbeddingCache;
 
     @Data
     @NoArgsConstructor
@@ -25,11 +27,10 @@ public class EmbeddingModelController {
 
     @PostMapping()
     public EmbeddingResponse embed(@RequestBody String text) {
-        var embeddingModel = modelRegistry.getCurrentEmbeddingModel();
-        var response = embeddingModel.embed(text);
-        var embedding = response.content();
+        var models = modelRegistry.getEmbeddingConfiguration();
+        var embedding = queryEmbeddingCache.embed(models, text);
         return EmbeddingResponse.builder()
-                .model(modelRegistry.getCurrentEmbeddingModelId())
+                .model(models.embeddingModelId())
                 .dimensions(embedding.dimension())
                 .vector(embedding.vector())
                 .build();
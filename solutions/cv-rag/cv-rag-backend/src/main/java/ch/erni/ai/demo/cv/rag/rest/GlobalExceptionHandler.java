@@ -1,9 +1,14 @@
 package ch.erni.ai.demo.cv.rag.rest;
 
+import ch.erni.ai.demo.cv.rag.agent.AgentJobNotFoundException;
+import ch.erni.ai.demo.cv.rag.config.EmbeddingDimensionMismatchException;
+import ch.erni.ai.demo.cv.service.ProfileNotFoundException;
+import ch.erni.ai.llm.service.ModelOverloadedException;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -26,6 +31,45 @@ public class GlobalExceptionHandler {
         StackTraceElement[] stackTrace;
     }
 
+    @ExceptionHandler({ProfileNotFoundException.class, AgentJobNotFoundException.class})
+    public ResponseEntity<ErrorResponse> handleNotFound(RuntimeException e) {
+        log.warn(e.getMessage());
+        return new ResponseEntity<>(
+                new ErrorResponse(
+                        e.getClass().getName(),
+                        e.getMessage(),
+                        LocalDateTime.now(),
+                        null
+                ), HttpStatus.NOT_FOUND
+        );
+    }
+
+    @ExceptionHandler(EmbeddingDimensionMismatchException.class)
+    public ResponseEntity<ErrorResponse> handleDimensionMismatch(EmbeddingDimensionMismatchException e) {
+        log.warn(e.getMessage());
+        return new ResponseEntity<>(
+                new ErrorResponse(
+                        e.getClass().getName(),
+                        e.getMessage(),
+                        LocalDateTime.now(),
+                        null
+                ), HttpStatus.CONFLICT
+        );
+    }
+
+    @ExceptionHandler(ModelOverloadedException.class)
+    public ResponseEntity<ErrorResponse> handleModelOverloaded(ModelOverloadedException e) {
+        log.warn(e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "5")
+                .body(new ErrorResponse(
+                        e.getClass().getName(),
+                        e.getMessage(),
+                        LocalDateTime.now(),
+                        null
+                ));
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ErrorResponse> handleException(Exception e) {
         log.error("Error in Rest Controller", e);
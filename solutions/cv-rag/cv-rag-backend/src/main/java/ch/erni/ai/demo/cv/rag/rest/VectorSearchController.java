@@ -4,11 +4,11 @@ package ch.erni.ai.demo.cv.rag.rest;
 import ch.erni.ai.demo.cv.rag.config.VectorStoreFactory;
 import ch.erni.ai.demo.cv.rag.rest.model.SearchInput;
 import ch.erni.ai.demo.cv.rag.rest.model.TextSegmentResult;
+import ch.erni.ai.demo.cv.rag.service.QueryEmbeddingCache;
 import ch.erni.ai.llm.service.ModelRegistry;
+import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.rag.content.retriever.ContentRetriever;
-import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
-import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
@@ -24,24 +24,38 @@ import java.util.stream.Collectors;
 public class VectorSearchController {
 
     private final ModelRegistry modelRegistry;
+    private final QueryEmbeddingCache queryEmbeddingCache;
     private final VectorStoreFactory vectorStoreFactory;
 
+    public record SearchResult(String embeddingModelId, Embedding queryEmbedding, List<TextSegmentResult> results) {
+    }
+
     @PostMapping("/search/{namespace}")
     public List<TextSegmentResult> vectorSearch(
             @PathVariable("namespace") CVIngestorController.Namespace namespace,
             @RequestBody SearchInput searchInput) {
+        return search(namespace, searchInput).results();
+    }
+
+    /**
+     * Searches the namespace and also returns the embedding of the question, so callers can reuse it.
+     * The whole search uses one embedding model, even if the model is switched meanwhile.
+     */
+    public SearchResult search(CVIngestorController.Namespace namespace, SearchInput searchInput) {
         log.info("*** vectorSearch: {}: for query '{}' ...", namespace, searchInput.question);
-        ContentRetriever contentRetriever = EmbeddingStoreContentRetriever.builder()
-                .embeddingStore(this.vectorStoreFactory.createEmbeddingStore(namespace.getType(), 768))
-                .embeddingModel(this.modelRegistry.getCurrentEmbeddingModel())
+        var models = modelRegistry.getEmbeddingConfiguration();
+        Embedding queryEmbedding = queryEmbeddingCache.embed(models, searchInput.question);
+        var request = EmbeddingSearchRequest.builder()
+                .queryEmbedding(queryEmbedding)
                 .maxResults(searchInput.maxResults)
                 //.minScore(0.75)
                 .build();
 
-        var result = contentRetriever
-                .retrieve(Query.from(searchInput.question))
-                .stream().map(content -> {
-                    TextSegment textSegment = content.textSegment();
+        var result = this.vectorStoreFactory.getEmbeddingStore(namespace.getType(), queryEmbedding.dimension())
+                .search(request)
+                .matches()
+                .stream().map(match -> {
+                    TextSegment textSegment = match.embedded();
                     return TextSegmentResult.builder()
                             .text(textSegment.text())
                             .metadata(textSegment.metadata().toMap())
@@ -52,7 +66,7 @@ public class VectorSearchController {
                         + t.text
                         + "\n-------- END OF TEXTSEGMENT------\n")
                 .collect(Collectors.joining()));
-        return result;
+        return new SearchResult(models.embeddingModelId(), queryEmbedding, result);
     }
 
 }
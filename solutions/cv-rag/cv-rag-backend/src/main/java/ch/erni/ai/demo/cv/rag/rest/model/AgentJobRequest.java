@@ -0,0 +1,12 @@
+package ch.erni.ai.demo.cv.rag.rest.model;
+
+import lombok.Data;
+
+@Data
+public class AgentJobRequest {
+    String question;
+    /**
+     * Session of a previous agent answer to continue the conversation, optional.
+     */
+    String sessionId;
+}
@@ -11,4 +11,5 @@ public class Message {
     String text;
     String type;
     List<TextSegmentResult> searchResults;
+    String sessionId;
 }
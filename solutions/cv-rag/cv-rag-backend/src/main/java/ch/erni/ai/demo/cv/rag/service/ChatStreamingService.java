@@ -0,0 +1,169 @@
+package ch.erni.ai.demo.cv.rag.service;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.PartialThinking;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Streams chat responses to the client as Server-Sent Events.
+ * <p>
+ * Events: "token" for every partial response, "done" with the final payload and "error" if the model fails.
+ * If the client goes away or the emitter times out, the generation is stopped with the next token, so the model
+ * slot and its admission permit are freed.
+ * Metrics: "cv.chat.ttft" (time to first token) and "cv.chat.tokens_per_second", both tagged with endpoint and model.
+ */
+@Slf4j
+@Service
+public class ChatStreamingService {
+
+    private final MeterRegistry meterRegistry;
+    private final Duration timeout;
+
+    public ChatStreamingService(MeterRegistry meterRegistry,
+                                @Value("${application.chat.stream-timeout:5m}") Duration timeout) {
+        this.meterRegistry = meterRegistry;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Starts the chat and returns immediately, the response is written to the emitter by the model's streaming thread.
+     *
+     * @param endpoint   name used for the metrics
+     * @param modelId    name used for the metrics
+     * @param completion creates the payload of the "done" event from the complete response
+     */
+    public SseEmitter stream(String endpoint, String modelId, StreamingChatModel model, List<ChatMessage> messages,
+                             Function<ChatResponse, Object> completion) {
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        AtomicBoolean clientGone = new AtomicBoolean(false);
+        emitter.onTimeout(() -> {
+            clientGone.set(true);
+            emitter.complete();
+        });
+        emitter.onError(e -> clientGone.set(true));
+
+        long start = System.nanoTime();
+        model.chat(messages, new StreamingChatResponseHandler() {
+
+            private final AtomicInteger partialResponses = new AtomicInteger();
+            private volatile long firstToken;
+
+            @Override
+            public void onPartialResponse(String partialResponse) {
+                if (stopIfClientGone()) {
+                    return;
+                }
+                if (partialResponses.getAndIncrement() == 0) {
+                    firstToken = System.nanoTime();
+                    Timer.builder("cv.chat.ttft")
+                            .tags("endpoint", endpoint, "model", modelId)
+                            .register(meterRegistry)
+                            .record(firstToken - start, TimeUnit.NANOSECONDS);
+                }
+                send(SseEmitter.event().name("token").data(Map.of("text", partialResponse)));
+            }
+
+            @Override
+            public void onPartialThinking(PartialThinking partialThinking) {
+                stopIfClientGone();
+            }
+
+            @Override
+            public void onCompleteResponse(ChatResponse response) {
+                recordThroughput(response);
+                if (send(SseEmitter.event().name("done").data(completion.apply(response)))) {
+                    emitter.complete();
+                }
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                if (clientGone.get()) {
+                    log.debug("{}: Streaming chat stopped, the client is gone: {}", endpoint, error.getMessage());
+                    return;
+                }
+                log.error("{}: Streaming chat failed", endpoint, error);
+                if (send(SseEmitter.event().name("error").data(Map.of("message", String.valueOf(error.getMessage()))))) {
+                    emitter.complete();
+                }
+            }
+
+            /**
+             * The handler is called on the thread that reads the response stream, a virtual thread per stream.
+             * Interrupting it aborts the next read, the model client then closes the connection and calls
+             * {@link #onError}. A thrown exception would only be logged by the model client.
+             */
+            private boolean stopIfClientGone() {
+                if (!clientGone.get()) {
+                    return false;
+                }
+                Thread.currentThread().interrupt();
+                return true;
+            }
+
+            private void recordThroughput(ChatResponse response) {
+                if (firstToken == 0) {
+                    return;
+                }
+                long generationNanos = System.nanoTime() - firstToken;
+                Integer outputTokens = response.tokenUsage() != null ? response.tokenUsage().outputTokenCount() : null;
+                // without token usage every partial response is counted as one token
+                int tokens = outputTokens != null ? outputTokens : partialResponses.get();
+                if (generationNanos > 0) {
+                    DistributionSummary.builder("cv.chat.tokens_per_second")
+                            .tags("endpoint", endpoint, "model", modelId)
+                            .register(meterRegistry)
+                            .record(tokens / (generationNanos / 1_000_000_000.0));
+                }
+            }
+
+            private boolean send(SseEmitter.SseEventBuilder event) {
+                if (clientGone.get()) {
+                    return false;
+                }
+                try {
+                    emitter.send(event);
+                    return true;
+                } catch (IOException | IllegalStateException e) {
+                    // the client went away, the generation stops with the next token
+                    clientGone.set(true);
+                    log.debug("{}: Client disconnected: {}", endpoint, e.getMessage());
+                    return false;
+                }
+            }
+        });
+        return emitter;
+    }
+
+    /**
+     * Sends an already known answer as the only "done" event, e.g. from a cache.
+     */
+    public SseEmitter completed(Object payload) {
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        try {
+            emitter.send(SseEmitter.event().name("done").data(payload));
+            emitter.complete();
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+        }
+        return emitter;
+    }
+}
@@ -1,15 +1,16 @@
 package ch.erni.ai.demo.cv.rag.service;
 
 import ch.erni.ai.llm.service.ModelRegistry;
-import ch.erni.ai.util.FileReaderHelper;
 import dev.langchain4j.data.message.ChatMessage;
 import dev.langchain4j.data.message.SystemMessage;
 import dev.langchain4j.data.message.UserMessage;
 import dev.langchain4j.model.chat.response.ChatResponse;
 import lombok.*;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.HashMap;
+import java.util.Map;
+
 @Service
 @RequiredArgsConstructor
 public class LanguageModelService {
@@ -22,24 +23,18 @@ public class LanguageModelService {
     }
 
     private final ModelRegistry modelRegistry;
-    @Value("${application.prompt-dir}")
-    private String promptDir;
+    private final PromptRegistry promptRegistry;
 
-    @SneakyThrows
     public UserMessage createUserMessageFromTemplate(String templateName, NameAndValue... variableAndValues) {
-        String userMessageText = FileReaderHelper.readFileFromFileSystem(promptDir + templateName + ".txt");
-
-        // replace variables
-        for(var variable: variableAndValues) {
-            userMessageText = userMessageText.replace(variable.name, variable.value);
-        };
-        return UserMessage.from(userMessageText);
+        Map<String, String> variables = new HashMap<>();
+        for (var variable : variableAndValues) {
+            variables.put(variable.name, variable.value);
+        }
+        return UserMessage.from(promptRegistry.render(templateName, variables));
     }
 
-    @SneakyThrows
     public SystemMessage createSystemMessageFromTemplate(String templateName) {
-        String systemPrompt = FileReaderHelper.readFileFromFileSystem(promptDir + templateName + ".txt");
-        return SystemMessage.from(systemPrompt);
+        return SystemMessage.from(promptRegistry.get(templateName).getSource());
     }
 
     public String executeSimplePrompt(String model, String promptName, NameAndValue... variableAndValues) {
@@ -0,0 +1,242 @@
+package ch.erni.ai.demo.cv.rag.service;
+
+import ch.erni.ai.demo.cv.rag.config.IngestionConfig;
+import ch.erni.ai.demo.cv.rag.config.ProfileEmbeddingStore;
+import ch.erni.ai.demo.cv.service.CVService;
+import ch.erni.ai.demo.cv.service.CVService.ProfileShort;
+import ch.erni.ai.llm.service.BatchingEmbedder;
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Ingests all CV profiles into an embedding store in the stages load, render, split, embed and store.
+ * <p>
+ * Profiles run concurrently on virtual threads, but every stage has its own concurrency limit that is shared by
+ * all running ingestions, so the chat and embedding servers only ever see a bounded number of requests.
+ * Model calls that time out are retried with exponential backoff and full jitter.
+ * Only profiles whose content, embedding model or transformation changed since the last ingestion are embedded again.
+ */
+@Slf4j
+@Service
+public class ProfileIngestionPipeline {
+
+    public enum Stage {
+        LOAD, RENDER, SPLIT, EMBED, STORE
+    }
+
+    public record ProfileIngestionResult(String id, String name, Integer totalTokens) {
+    }
+
+    private final CVService cvService;
+    private final IngestionConfig config;
+    private final MeterRegistry meterRegistry;
+    private final Map<Stage, Semaphore> stagePermits = new EnumMap<>(Stage.class);
+
+    public ProfileIngestionPipeline(CVService cvService, IngestionConfig config, MeterRegistry meterRegistry) {
+        this.cvService = cvService;
+        this.config = config;
+        this.meterRegistry = meterRegistry;
+        var concurrency = config.getConcurrency();
+        stagePermits.put(Stage.LOAD, new Semaphore(concurrency.getLoad()));
+        stagePermits.put(Stage.RENDER, new Semaphore(concurrency.getRender()));
+        stagePermits.put(Stage.SPLIT, new Semaphore(concurrency.getSplit()));
+        stagePermits.put(Stage.EMBED, new Semaphore(concurrency.getEmbed()));
+        stagePermits.put(Stage.STORE, new Semaphore(concurrency.getStore()));
+    }
+
+    /**
+     * Ingests all profiles whose content changed and blocks until every profile is either stored or failed.
+     * <p>
+     * Every chunk is stored with the profile id and the SHA-256 hash of the fingerprint and the rendered content.
+     * A profile whose hash matches the stored one is skipped, the chunks of a changed profile are replaced in one
+     * transaction and the chunks of profiles that no longer exist are removed.
+     *
+     * @param namespace      name used for logging and metrics
+     * @param fingerprint    identifies everything besides the content the chunks depend on, e.g. the embedding model
+     *                       and the prompt and model of the transformer, so changing them re-ingests all profiles
+     * @param renderer       creates the content of a profile by id, the content hash is calculated from it
+     * @param transformer    creates the text to embed from the rendered content, e.g. a summary
+     * @param splitter       splits the text into segments
+     * @param embeddingModel model to embed the segments
+     * @param tokenCountEstimator estimator of the embedding model, used to batch the segments
+     * @param embeddingStore store the chunks of the profiles are replaced in
+     * @param force          re-ingest all profiles, even if their content did not change
+     * @return one result per re-ingested profile
+     */
+    public List<ProfileIngestionResult> ingest(String namespace,
+                                               String fingerprint,
+                                               Function<String, String> renderer,
+                                               UnaryOperator<String> transformer,
+                                               DocumentSplitter splitter,
+                                               EmbeddingModel embeddingModel,
+                                               TokenCountEstimator tokenCountEstimator,
+                                               ProfileEmbeddingStore embeddingStore,
+                                               boolean force) {
+        var embedBatch = config.getEmbedBatch();
+        var embedder = new BatchingEmbedder(embeddingModel, tokenCountEstimator, embedBatch.getMaxTokens(), embedBatch.getMaxSegments());
+        var profiles = cvService.getProfiles();
+        Map<String, String> storedHashes = embeddingStore.findContentHashes();
+        List<ProfileIngestionResult> results = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger current = new AtomicInteger(0);
+        AtomicInteger unchanged = new AtomicInteger(0);
+        AtomicInteger errors = new AtomicInteger(0);
+        Semaphore inFlight = new Semaphore(config.getMaxInFlight());
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (var profileShort : profiles) {
+                // backpressure: do not start more profiles than the pipeline can hold
+                inFlight.acquireUninterruptibly();
+                executor.submit(() -> {
+                    try {
+                        String content = inStage(namespace, Stage.LOAD, () -> renderer.apply(profileShort.id));
+                        String contentHash = sha256(fingerprint + "\n" + content);
+                        if (!force && contentHash.equals(storedHashes.get(profileShort.id))) {
+                            unchanged.incrementAndGet();
+                            meterRegistry.counter("cv.ingest.profiles", "namespace", namespace, "outcome", "unchanged").increment();
+                            log.debug("{}: Profile {} is unchanged: {}", namespace, profileShort.id, profileShort.name);
+                            return;
+                        }
+                        String text = withRetry(namespace, Stage.RENDER, () -> transformer.apply(content));
+                        var metadata = Metadata.from(Map.of(
+                                ProfileEmbeddingStore.PROFILE_ID, profileShort.id,
+                                "name", profileShort.name,
+                                ProfileEmbeddingStore.CONTENT_HASH, contentHash));
+                        List<TextSegment> segments = inStage(namespace, Stage.SPLIT,
+                                () -> splitter.split(Document.document(text, metadata)));
+                        if (segments.isEmpty()) {
+                            inStage(namespace, Stage.STORE, () -> embeddingStore.removeProfile(profileShort.id));
+                            log.info("{}: Nothing to ingest for profile {}: {}", namespace, profileShort.id, profileShort.name);
+                            return;
+                        }
+                        Response<List<Embedding>> embeddings = withRetry(namespace, Stage.EMBED,
+                                () -> embedder.embedAll(segments));
+                        inStage(namespace, Stage.STORE, () -> {
+                            embeddingStore.replaceProfile(profileShort.id, embeddings.content(), segments);
+                            return null;
+                        });
+
+                        Integer totalTokens = embeddings.tokenUsage() != null ? embeddings.tokenUsage().totalTokenCount() : null;
+                        results.add(new ProfileIngestionResult(profileShort.id, profileShort.name, totalTokens));
+                        meterRegistry.counter("cv.ingest.profiles", "namespace", namespace, "outcome", "success").increment();
+                        log.info("{}: Ingested profile {} of {}. {}: {}", namespace, current.incrementAndGet(), profiles.size(), profileShort.id, profileShort.name);
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                        meterRegistry.counter("cv.ingest.profiles", "namespace", namespace, "outcome", "failure").increment();
+                        log.error("{}: Error while ingesting profile {}: {}", namespace, profileShort.id, profileShort.name, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+        int removed = removeStaleProfiles(namespace, embeddingStore, storedHashes.keySet(), profiles);
+        log.info("{}: {} profiles ingested, {} unchanged, {} removed", namespace, results.size(), unchanged.get(), removed);
+        if (errors.get() > 0) {
+            log.error("{}: {} profiles could not be ingested", namespace, errors.get());
+        }
+        return results;
+    }
+
+    private int removeStaleProfiles(String namespace, ProfileEmbeddingStore embeddingStore,
+                                    Set<String> storedProfileIds, List<ProfileShort> profiles) {
+        Set<String> stale = new HashSet<>(storedProfileIds);
+        profiles.forEach(profile -> stale.remove(profile.id));
+        for (String profileId : stale) {
+            inStage(namespace, Stage.STORE, () -> embeddingStore.removeProfile(profileId));
+            meterRegistry.counter("cv.ingest.profiles", "namespace", namespace, "outcome", "removed").increment();
+            log.info("{}: Removed stale profile {}", namespace, profileId);
+        }
+        return stale.size();
+    }
+
+    static String sha256(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private <T> T inStage(String namespace, Stage stage, Supplier<T> work) {
+        Semaphore permits = stagePermits.get(stage);
+        permits.acquireUninterruptibly();
+        try {
+            return Timer.builder("cv.ingest.stage")
+                    .tag("namespace", namespace)
+                    .tag("stage", stage.name().toLowerCase())
+                    .register(meterRegistry)
+                    .record(work);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private <T> T withRetry(String namespace, Stage stage, Supplier<T> work) {
+        var retry = config.getRetry();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return inStage(namespace, stage, work);
+            } catch (RuntimeException e) {
+                if (attempt >= retry.getMaxAttempts() || !isTimeout(e)) {
+                    throw e;
+                }
+                long maxDelay = Math.min(retry.getMaxBackoff().toMillis(), retry.getInitialBackoff().toMillis() << (attempt - 1));
+                long delay = ThreadLocalRandom.current().nextLong(maxDelay + 1);
+                meterRegistry.counter("cv.ingest.retries", "namespace", namespace, "stage", stage.name().toLowerCase()).increment();
+                log.warn("{}: {} timed out (attempt {} of {}), retrying in {} ms", namespace, stage, attempt, retry.getMaxAttempts(), delay);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static boolean isTimeout(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SocketTimeoutException
+                    || t instanceof HttpTimeoutException
+                    || t instanceof TimeoutException
+                    || t instanceof dev.langchain4j.exception.TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
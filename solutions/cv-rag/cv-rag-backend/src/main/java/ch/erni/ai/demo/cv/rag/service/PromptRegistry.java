@@ -0,0 +1,84 @@
+package ch.erni.ai.demo.cv.rag.service;
+
+import ch.erni.ai.util.DirectoryWatcher;
+import ch.erni.ai.util.FileReaderHelper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * All prompt templates of the prompt directory, compiled once and looked up by file name without ".txt".
+ * The templates are reloaded when files in the directory change.
+ */
+@Slf4j
+@Service
+public class PromptRegistry {
+
+    private static final String SUFFIX = ".txt";
+
+    private final String promptDir;
+    private final boolean watch;
+    private volatile Map<String, PromptTemplate> templates = Map.of();
+    private DirectoryWatcher watcher;
+
+    public PromptRegistry(@Value("${application.prompt-dir}") String promptDir,
+                          @Value("${application.prompt-watch:true}") boolean watch) {
+        this.promptDir = promptDir;
+        this.watch = watch;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        reload();
+        if (watch) {
+            watcher = new DirectoryWatcher(Path.of(promptDir), Duration.ofMillis(500), this::reload);
+            watcher.start();
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+        }
+    }
+
+    /**
+     * Compiles all templates and replaces the current ones. If the directory cannot be read, the current ones are kept.
+     */
+    public synchronized void reload() {
+        try {
+            Map<String, PromptTemplate> loaded = new HashMap<>();
+            for (String file : FileReaderHelper.listFiles(promptDir)) {
+                if (file.endsWith(SUFFIX)) {
+                    String name = file.substring(0, file.length() - SUFFIX.length());
+                    loaded.put(name, PromptTemplate.compile(name, FileReaderHelper.readFileFromFileSystem(promptDir + file)));
+                }
+            }
+            templates = Map.copyOf(loaded);
+            log.info("Loaded {} prompt templates from {}", loaded.size(), promptDir);
+        } catch (IOException e) {
+            log.error("Could not load prompt templates from {}", promptDir, e);
+        }
+    }
+
+    public PromptTemplate get(String name) {
+        PromptTemplate template = templates.get(name);
+        if (template == null) {
+            throw new IllegalArgumentException("Prompt template not found: " + name);
+        }
+        return template;
+    }
+
+    public String render(String name, Map<String, String> variables) {
+        return get(name).render(variables);
+    }
+}
@@ -0,0 +1,80 @@
+package ch.erni.ai.demo.cv.rag.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A prompt template compiled into literal and variable segments.
+ * <p>
+ * Variables are written as {@code {{name}}} or {@code {name}}. Rendering computes the final length first and
+ * fills one pre-sized builder, instead of copying the whole prompt once per variable.
+ * Variables without a value are rendered as written in the template.
+ */
+public final class PromptTemplate {
+
+    private static final Pattern VARIABLE = Pattern.compile("\\{\\{([A-Za-z_][A-Za-z0-9_]*)}}|\\{([A-Za-z_][A-Za-z0-9_]*)}");
+
+    private record Segment(String text, String variable) {
+    }
+
+    private final String name;
+    private final String source;
+    private final List<Segment> segments;
+    private final int literalLength;
+
+    private PromptTemplate(String name, String source, List<Segment> segments) {
+        this.name = name;
+        this.source = source;
+        this.segments = List.copyOf(segments);
+        this.literalLength = segments.stream().filter(s -> s.variable() == null).mapToInt(s -> s.text().length()).sum();
+    }
+
+    public static PromptTemplate compile(String name, String source) {
+        List<Segment> segments = new ArrayList<>();
+        Matcher matcher = VARIABLE.matcher(source);
+        int position = 0;
+        while (matcher.find()) {
+            if (matcher.start() > position) {
+                segments.add(new Segment(source.substring(position, matcher.start()), null));
+            }
+            String variable = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+            segments.add(new Segment(matcher.group(), variable));
+            position = matcher.end();
+        }
+        if (position < source.length()) {
+            segments.add(new Segment(source.substring(position), null));
+        }
+        return new PromptTemplate(name, source, segments);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String render(Map<String, String> variables) {
+        int length = literalLength;
+        for (Segment segment : segments) {
+            if (segment.variable() != null) {
+                String value = variables.get(segment.variable());
+                length += value != null ? value.length() : segment.text().length();
+            }
+        }
+        StringBuilder sb = new StringBuilder(length);
+        for (Segment segment : segments) {
+            if (segment.variable() == null) {
+                sb.append(segment.text());
+            } else {
+                String value = variables.get(segment.variable());
+                sb.append(value != null ? value : segment.text());
+            }
+        }
+        return sb.toString();
+    }
+}
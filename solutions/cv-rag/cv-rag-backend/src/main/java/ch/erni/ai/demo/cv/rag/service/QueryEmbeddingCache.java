@@ -0,0 +1,74 @@
+package ch.erni.ai.demo.cv.rag.service;
+
+import ch.erni.ai.demo.cv.rag.config.QueryEmbeddingCacheConfig;
+import ch.erni.ai.llm.service.ModelConfiguration;
+import ch.erni.ai.llm.service.ModelRegistry;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.langchain4j.data.embedding.Embedding;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Embeddings of query texts, shared by all callers that embed questions with the current embedding model.
+ * <p>
+ * Bounded Caffeine cache (W-TinyLFU eviction) keyed by embedding model id and text, so switching the model
+ * never returns a vector of the other model. Hit rate and evictions are published as "cache.*" meters with
+ * the tag cache=query-embeddings.
+ * <p>
+ * A missing embedding is computed on the thread of the first caller, outside of the cache's locks; concurrent
+ * callers of the same text wait for it instead of embedding it again. A failed embedding is not cached.
+ */
+@Service
+public class QueryEmbeddingCache {
+
+    private record Key(String modelId, String text) {
+    }
+
+    private final ModelRegistry modelRegistry;
+    private final AsyncCache<Key, Embedding> cache;
+
+    public QueryEmbeddingCache(ModelRegistry modelRegistry, QueryEmbeddingCacheConfig config, MeterRegistry meterRegistry) {
+        this.modelRegistry = modelRegistry;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(config.getMaxSize())
+                .expireAfterAccess(config.getExpireAfterAccess())
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "query-embeddings");
+    }
+
+    /**
+     * @return the embedding of the text with the current embedding model, only computed on a cache miss
+     */
+    public Embedding embed(String text) {
+        return embed(modelRegistry.getEmbeddingConfiguration(), text);
+    }
+
+    /**
+     * @return the embedding of the text with the embedding model of the configuration, only computed on a cache miss
+     */
+    public Embedding embed(ModelConfiguration models, String text) {
+        CompletableFuture<Embedding> load = new CompletableFuture<>();
+        CompletableFuture<Embedding> embedding = cache.get(new Key(models.embeddingModelId(), text), (key, executor) -> load);
+        if (embedding == load) {
+            try {
+                load.complete(models.embeddingModel().embed(text).content());
+            } catch (Throwable e) {
+                load.completeExceptionally(e);
+            }
+        }
+        try {
+            return embedding.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package ch.erni.ai.demo.cv.rag.service;
+
+import ch.erni.ai.demo.cv.rag.config.AnswerCacheConfig;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.store.embedding.CosineSimilarity;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches answers to questions about search results by the meaning of the question.
+ * <p>
+ * An answer is reused for a new question if the namespace, the chat and embedding model and the retrieved
+ * profiles are the same, and the question embeddings have at least the configured cosine similarity.
+ * Entries expire after the TTL, the least recently used are evicted above the maximum size,
+ * and all entries of a namespace are dropped when it is re-ingested.
+ * Each invalidation starts a new generation of the namespace: answers computed from a search of an older
+ * generation, e.g. a stream completing after the re-ingestion, are not cached.
+ * Metrics: "cv.answer.cache" (counter, tag outcome hit/miss) and "cv.answer.cache.size" (gauge).
+ */
+@Slf4j
+@Service
+public class SemanticAnswerCache {
+
+    /**
+     * Everything but the question that must match to reuse an answer.
+     *
+     * @param generation the {@link #generation(String) generation} of the namespace before it was searched
+     */
+    public record Context(String namespace, long generation, String chatModelId, String embeddingModelId,
+                          SortedSet<String> profileIds) {
+
+        public Context(String namespace, long generation, String chatModelId, String embeddingModelId, List<String> profileIds) {
+            this(namespace, generation, chatModelId, embeddingModelId, new TreeSet<>(profileIds));
+        }
+    }
+
+    private record Entry(Context context, Embedding question, Object answer) {
+    }
+
+    private final AnswerCacheConfig config;
+    private final MeterRegistry meterRegistry;
+    private final Cache<UUID, Entry> cache;
+    private final ConcurrentMap<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    public SemanticAnswerCache(AnswerCacheConfig config, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.meterRegistry = meterRegistry;
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(config.getTtl())
+                .maximumSize(config.getMaxSize())
+                .build();
+        Gauge.builder("cv.answer.cache.size", cache, Cache::estimatedSize).register(meterRegistry);
+    }
+
+    /**
+     * @return the answer to the most similar cached question with the same context
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Optional<T> get(Context context, Embedding question) {
+        if (!config.isEnabled()) {
+            return Optional.empty();
+        }
+        UUID bestKey = null;
+        double bestSimilarity = config.getSimilarityThreshold();
+        for (var cached : cache.asMap().entrySet()) {
+            Entry entry = cached.getValue();
+            if (!entry.context().equals(context)) {
+                continue;
+            }
+            double similarity = CosineSimilarity.between(entry.question(), question);
+            if (similarity >= bestSimilarity) {
+                bestSimilarity = similarity;
+                bestKey = cached.getKey();
+            }
+        }
+        // getIfPresent marks the entry as used for the eviction policy
+        Entry hit = bestKey != null ? cache.getIfPresent(bestKey) : null;
+        meterRegistry.counter("cv.answer.cache", "namespace", context.namespace(), "outcome", hit != null ? "hit" : "miss").increment();
+        if (hit != null) {
+            log.info("{}: Answer cache hit with similarity {}", context.namespace(), bestSimilarity);
+            return Optional.of((T) hit.answer());
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Caches the answer, unless the namespace was invalidated since the context was created.
+     */
+    public void put(Context context, Embedding question, Object answer) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        if (context.generation() != generation(context.namespace())) {
+            log.debug("{}: Answer not cached, the namespace was invalidated meanwhile", context.namespace());
+            return;
+        }
+        cache.put(UUID.randomUUID(), new Entry(context, question, answer));
+    }
+
+    /**
+     * @return the current generation of the namespace, to be taken before searching it
+     */
+    public long generation(String namespace) {
+        return generations.computeIfAbsent(namespace, ns -> new AtomicLong()).get();
+    }
+
+    /**
+     * Drops all answers based on the namespace, e.g. after it was re-ingested.
+     */
+    public void invalidate(String namespace) {
+        // a put racing with the removal still adds its entry, but with the old generation it never matches again
+        generations.computeIfAbsent(namespace, ns -> new AtomicLong()).incrementAndGet();
+        cache.asMap().values().removeIf(entry -> entry.context().namespace().equals(namespace));
+        log.info("{}: Answer cache invalidated", namespace);
+    }
+}
@@ -4,11 +4,18 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 @Configuration
 @ConfigurationProperties("application.cv")
 @Data
 public class CVConfigProps {
     private String sourceDir;
+    /**
+     * Reload the profiles when files in the source directory change.
+     */
+    private boolean watch = false;
+    private Duration watchDebounce = Duration.ofSeconds(2);
 
     public String getSourceDir() {
         if (sourceDir == null || sourceDir.isEmpty()) {
@@ -3,23 +3,23 @@ package ch.erni.ai.demo.cv.service;
 
 import ch.erni.ai.demo.cv.config.CVConfigProps;
 import ch.erni.ai.demo.cv.model.Profile;
-import ch.erni.ai.util.FileReaderHelper;
+import ch.erni.ai.util.DirectoryWatcher;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.Metrics;
 import jakarta.annotation.PostConstruct;
-import lombok.Getter;
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PreDestroy;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class CVService {
 
     private final CVConfigProps props;
@@ -61,41 +61,65 @@ public class CVService {
         return new CVService(props, objectMapper);
     }
 
-    private final ObjectMapper objectMapper;
-    @Getter
-    private final List<ProfileShort> profiles = new ArrayList<>();
+    private final ProfileRepository repository;
+    private DirectoryWatcher watcher;
 
+    public CVService(CVConfigProps props, ObjectMapper objectMapper) {
+        this.props = props;
+        this.repository = new ProfileRepository(props.getSourceDir(), objectMapper, Metrics.globalRegistry);
+    }
+
+    /**
+     * Starts loading the profiles in the background, requests arriving before the load finished wait for it.
+     */
     @SneakyThrows
     @PostConstruct
     public void init() {
+        repository.loadInBackground();
+        if (props.isWatch()) {
+            watcher = new DirectoryWatcher(Path.of(props.getSourceDir()), props.getWatchDebounce(), this::reload);
+            watcher.start();
+        }
+    }
 
-        List<String> files = FileReaderHelper.listFiles(props.getSourceDir());
-        for (String file : files) {
-            ProfileShort profile = objectMapper.readValue(FileReaderHelper.readFileFromFileSystem(props.getSourceDir() + file), ProfileShort.class);
-            profile.id = file.substring(0, file.lastIndexOf("."));
-            profiles.add(profile);
+    @PreDestroy
+    public void close() throws IOException {
+        if (watcher != null) {
+            watcher.close();
         }
     }
 
+    /**
+     * Reloads all profiles from the source directory.
+     */
+    public void reload() {
+        repository.reload();
+    }
+
     public List<ProfileShort> getProfiles() {
-        if (profiles.isEmpty()) {
-            init();
-        }
-        return profiles;
+        return repository.snapshot().profiles();
     }
 
-    @SneakyThrows
     public ProfileShort getProfileShort(String id) {
-        return objectMapper.readValue(FileReaderHelper.readFileFromFileSystem(props.getSourceDir() + id + ".json"), ProfileShort.class);
+        return repository.get(id).profileShort();
     }
 
-    @SneakyThrows
+    /**
+     * @return the cached profile, it is shared and must not be modified
+     */
     public Profile getProfile(String id) {
-        return objectMapper.readValue(FileReaderHelper.readFileFromFileSystem(props.getSourceDir() + id + ".json"), Profile.class);
+        return repository.get(id).profile();
     }
 
-    @SneakyThrows
     public String getProfileAsMarkdown(String id) {
-        return getProfile(id).toMarkDown();
+        return repository.get(id).markdown();
+    }
+
+    public String getSkillsAsMarkdown(String id) {
+        return repository.get(id).skillsMarkdown();
+    }
+
+    public String getProjectsAsMarkdown(String id) {
+        return repository.get(id).projectsMarkdown();
     }
 }
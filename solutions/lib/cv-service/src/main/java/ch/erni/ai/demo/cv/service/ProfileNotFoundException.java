@@ -0,0 +1,7 @@
+package ch.erni.ai.demo.cv.service;
+
+public class ProfileNotFoundException extends RuntimeException {
+    public ProfileNotFoundException(String id) {
+        super("Profile not found: " + id);
+    }
+}
@@ -0,0 +1,131 @@
+package ch.erni.ai.demo.cv.service;
+
+import ch.erni.ai.demo.cv.model.Profile;
+import ch.erni.ai.demo.cv.service.CVService.ProfileShort;
+import ch.erni.ai.util.FileReaderHelper;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps all profiles of the source directory in memory, indexed by id.
+ * <p>
+ * The profiles and their markdown are parsed and rendered once per load. A load builds a new immutable
+ * {@link Snapshot} which atomically replaces the previous one, readers never see a partially loaded directory.
+ * The first load runs in the background, readers arriving before it finished wait for that single load.
+ * The cached profiles are shared and must not be modified.
+ * <p>
+ * Metrics: "cv.profiles.load" (timer, tag outcome) and "cv.profiles.count" (gauge).
+ */
+@Slf4j
+public class ProfileRepository {
+
+    /**
+     * A loaded profile with its rendered markdown.
+     */
+    public record Entry(ProfileShort profileShort, Profile profile,
+                        String markdown, String skillsMarkdown, String projectsMarkdown) {
+    }
+
+    public record Snapshot(List<ProfileShort> profiles, Map<String, Entry> byId) {
+    }
+
+    private final String sourceDir;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final Object reloadLock = new Object();
+    private CompletableFuture<Snapshot> initialLoad;
+
+    public ProfileRepository(String sourceDir, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.sourceDir = sourceDir;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("cv.profiles.count", snapshot, s -> s.get() == null ? 0 : s.get().profiles().size())
+                .description("Number of loaded CV profiles")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts the first load on a virtual thread, unless it is already running or done.
+     */
+    public synchronized CompletableFuture<Snapshot> loadInBackground() {
+        if (initialLoad == null || initialLoad.isCompletedExceptionally()) {
+            initialLoad = CompletableFuture.supplyAsync(this::reload, Thread.ofVirtual().name("profile-loader")::start);
+        }
+        return initialLoad;
+    }
+
+    public Snapshot snapshot() {
+        Snapshot current = snapshot.get();
+        if (current != null) {
+            return current;
+        }
+        return loadInBackground().join();
+    }
+
+    public Entry get(String id) {
+        Entry entry = snapshot().byId().get(id);
+        if (entry == null) {
+            throw new ProfileNotFoundException(id);
+        }
+        return entry;
+    }
+
+    /**
+     * Reads all profiles from the source directory and replaces the current snapshot.
+     * If the load fails, the current snapshot is kept.
+     */
+    public Snapshot reload() {
+        synchronized (reloadLock) {
+            return doReload();
+        }
+    }
+
+    private Snapshot doReload() {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        long start = System.nanoTime();
+        try {
+            List<Entry> entries = FileReaderHelper.listFiles(sourceDir).parallelStream()
+                    .filter(file -> file.endsWith(".json"))
+                    .map(this::load)
+                    .toList();
+            Snapshot loaded = new Snapshot(
+                    entries.stream().map(Entry::profileShort).toList(),
+                    entries.stream().collect(Collectors.toUnmodifiableMap(e -> e.profileShort().id, Function.identity())));
+            Snapshot previous = snapshot.getAndSet(loaded);
+            sample.stop(meterRegistry.timer("cv.profiles.load", "outcome", "success"));
+            log.info("Loaded {} profiles (before {}) from {} in {} ms", loaded.profiles().size(),
+                    previous == null ? 0 : previous.profiles().size(), sourceDir, (System.nanoTime() - start) / 1_000_000);
+            return loaded;
+        } catch (Exception e) {
+            sample.stop(meterRegistry.timer("cv.profiles.load", "outcome", "failure"));
+            log.error("Could not load profiles from {}", sourceDir, e);
+            Snapshot current = snapshot.get();
+            if (current == null) {
+                throw e instanceof RuntimeException re ? re : new IllegalStateException(e);
+            }
+            return current;
+        }
+    }
+
+    @SneakyThrows
+    private Entry load(String file) {
+        JsonNode json = objectMapper.readTree(FileReaderHelper.readFileFromFileSystem(sourceDir + file));
+        ProfileShort profileShort = objectMapper.treeToValue(json, ProfileShort.class);
+        profileShort.id = file.substring(0, file.lastIndexOf("."));
+        Profile profile = objectMapper.treeToValue(json, Profile.class);
+        return new Entry(profileShort, profile, profile.toMarkDown(), profile.skillsToMarkDown(), profile.projectsToMarkDown());
+    }
+}
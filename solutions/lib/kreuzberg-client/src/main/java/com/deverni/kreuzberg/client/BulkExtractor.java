@@ -0,0 +1,410 @@
+package com.deverni.kreuzberg.client;
+
+import com.deverni.kreuzberg.client.exception.KreuzbergException;
+import com.deverni.kreuzberg.client.model.ExtractionConfig;
+import com.deverni.kreuzberg.client.model.ExtractionResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Extracts many files with a {@link KreuzbergClient}, several files per request and several requests
+ * at a time.
+ *
+ * <p>The files are grouped into batches of at most {@code maxBatchBytes} bytes and {@code maxBatchFiles}
+ * files, a file larger than the byte limit is sent alone. Up to {@code parallelism} batches are extracted
+ * concurrently with {@link KreuzbergClient#extractAsync(ExtractionConfig, File...)}. Note that the client
+ * additionally limits the requests per host, see {@link KreuzbergClient.Builder#maxRequestsPerHost(int)}.
+ *
+ * <p>Every file gets its own {@link FileResult}. If a batch fails, its files are extracted again one by
+ * one, so a single broken file only fails itself.
+ *
+ * <p>With an {@link ExtractionCache} files extracted before are taken from the cache and only the others
+ * are sent to the server.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ * BulkExtractor extractor = BulkExtractor.builder(client)
+ *     .config(ExtractionConfig.builder().forceOcr(true).build())
+ *     .maxBatchBytes(20 * 1024 * 1024)
+ *     .parallelism(4)
+ *     .build();
+ *
+ * for (BulkExtractor.FileResult result : extractor.extractDirectory(Path.of("data/scaninbox"))) {
+ *     if (!result.isSuccess()) {
+ *         System.err.println(result.getFile() + ": " + result.getError().getMessage());
+ *     }
+ * }
+ * }</pre>
+ */
+public class BulkExtractor {
+
+    private final KreuzbergClient client;
+    private final ExtractionConfig config;
+    private final long maxBatchBytes;
+    private final int maxBatchFiles;
+    private final int parallelism;
+    private final ExtractionCache cache;
+
+    private BulkExtractor(Builder builder) {
+        this.client = builder.client;
+        this.config = builder.config;
+        this.maxBatchBytes = builder.maxBatchBytes;
+        this.maxBatchFiles = builder.maxBatchFiles;
+        this.parallelism = builder.parallelism;
+        this.cache = builder.cache;
+    }
+
+    public static Builder builder(KreuzbergClient client) {
+        return new Builder(client);
+    }
+
+    /**
+     * Extracts all regular, non-hidden files directly in the directory, in name order.
+     *
+     * @param directory the directory to extract
+     * @return one result per file, in name order
+     * @throws IOException if the directory cannot be listed
+     * @throws InterruptedException if interrupted while waiting for the extraction, pending requests are cancelled
+     */
+    public List<FileResult> extractDirectory(Path directory) throws IOException, InterruptedException {
+        return extract(listFiles(directory));
+    }
+
+    /**
+     * Extracts the files.
+     *
+     * @param files the files to extract
+     * @return one result per file, in the order of the files
+     * @throws InterruptedException if interrupted while waiting for the extraction, pending requests are cancelled
+     */
+    public List<FileResult> extract(List<Path> files) throws InterruptedException {
+        Map<Path, FileResult> results = new HashMap<>();
+        extract(files, result -> results.put(result.getFile(), result));
+        return files.stream().map(results::get).collect(Collectors.toList());
+    }
+
+    /**
+     * Extracts the files and passes each result to the consumer as soon as its batch is done, without
+     * keeping the results. This is the way to go for large numbers of files.
+     *
+     * <p>The consumer is called from OkHttp's dispatcher threads, but by one thread at a time. Once the
+     * calling thread is interrupted, no further files are sent and the consumer is not called anymore.
+     *
+     * @param files    the files to extract
+     * @param consumer receives one result per file, in the order the batches complete
+     * @throws InterruptedException if interrupted while waiting for the extraction, pending requests are cancelled
+     */
+    public void extract(List<Path> files, Consumer<FileResult> consumer) throws InterruptedException {
+        Semaphore permits = new Semaphore(parallelism);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Consumer<FileResult> serialized = result -> {
+            synchronized (consumer) {
+                if (!cancelled.get()) {
+                    consumer.accept(result);
+                }
+            }
+        };
+        Map<Path, String> keys = new HashMap<>();
+        List<Path> uncached = new ArrayList<>();
+        for (Path file : files) {
+            List<ExtractionResult> cached = cached(file, keys);
+            if (cached != null && cached.size() == 1) {
+                serialized.accept(new FileResult(file, cached.get(0), null));
+            } else {
+                uncached.add(file);
+            }
+        }
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        List<CompletableFuture<?>> requests = Collections.synchronizedList(new ArrayList<>());
+        try {
+            for (List<Path> batch : batches(uncached)) {
+                permits.acquire();
+                CompletableFuture<Void> future = extractBatch(batch, requests, cancelled)
+                        .thenAccept(results -> results.forEach(result -> {
+                            if (result.isSuccess() && keys.containsKey(result.getFile())) {
+                                cache.put(keys.get(result.getFile()), List.of(result.getResult()));
+                            }
+                            serialized.accept(result);
+                        }))
+                        .whenComplete((ignored, e) -> permits.release());
+                pending.add(future);
+            }
+            // wait until every batch is done, giving the permits back as they complete
+            permits.acquire(parallelism);
+            permits.release(parallelism);
+        } catch (InterruptedException e) {
+            cancelled.set(true);
+            List<CompletableFuture<?>> sent;
+            synchronized (requests) {
+                // a cancelled request removes itself from the list
+                sent = List.copyOf(requests);
+            }
+            sent.forEach(request -> request.cancel(true));
+            throw e;
+        }
+        for (CompletableFuture<Void> future : pending) {
+            // fails only if the consumer threw
+            future.join();
+        }
+    }
+
+    /**
+     * Looks the file up in the cache, and remembers its key to cache it after the extraction.
+     *
+     * @return the cached results, {@code null} if there are none
+     */
+    private List<ExtractionResult> cached(Path file, Map<Path, String> keys) {
+        if (cache == null) {
+            return null;
+        }
+        try {
+            String key = cache.key(config, file);
+            keys.put(file, key);
+            return cache.get(key);
+        } catch (KreuzbergException e) {
+            // unreadable, the extraction reports it
+            return null;
+        }
+    }
+
+    /**
+     * Groups the files into batches of at most {@code maxBatchBytes} bytes and {@code maxBatchFiles} files,
+     * keeping their order.
+     *
+     * @param files the files to group
+     * @return the batches
+     */
+    public List<List<Path>> batches(List<Path> files) {
+        List<List<Path>> batches = new ArrayList<>();
+        List<Path> batch = new ArrayList<>();
+        long batchBytes = 0;
+        for (Path file : files) {
+            long size = size(file);
+            if (!batch.isEmpty() && (batchBytes + size > maxBatchBytes || batch.size() >= maxBatchFiles)) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+            batch.add(file);
+            batchBytes += size;
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    /**
+     * @param requests  collects the requests, to cancel them on interrupt
+     * @param cancelled set on interrupt, the batch then fails without being sent
+     */
+    private CompletableFuture<List<FileResult>> extractBatch(List<Path> batch, List<CompletableFuture<?>> requests,
+                                                             AtomicBoolean cancelled) {
+        if (cancelled.get()) {
+            return CompletableFuture.completedFuture(failed(batch, new KreuzbergException("Extraction cancelled")));
+        }
+        CompletableFuture<List<ExtractionResult>> extraction;
+        try {
+            extraction = client.extractAsync(config, batch.stream().map(Path::toFile).toArray(File[]::new));
+            requests.add(extraction);
+            CompletableFuture<List<ExtractionResult>> request = extraction;
+            request.whenComplete((results, error) -> requests.remove(request));
+            if (cancelled.get()) {
+                // interrupted while sending, the requests may already have been cancelled without this one
+                request.cancel(true);
+            }
+        } catch (IllegalArgumentException e) {
+            extraction = CompletableFuture.failedFuture(new KreuzbergException(e.getMessage(), e));
+        }
+        return extraction.handle((results, error) -> {
+            if (error == null && results.size() == batch.size()) {
+                List<FileResult> fileResults = new ArrayList<>(batch.size());
+                for (int i = 0; i < batch.size(); i++) {
+                    fileResults.add(new FileResult(batch.get(i), results.get(i), null));
+                }
+                return CompletableFuture.completedFuture(fileResults);
+            }
+            KreuzbergException failure = error != null
+                    ? toKreuzbergException(error)
+                    : new KreuzbergException("Expected " + batch.size() + " results but got " + results.size());
+            if (batch.size() == 1 || error instanceof CancellationException) {
+                return CompletableFuture.completedFuture(failed(batch, failure));
+            }
+            return extractOneByOne(batch, requests, cancelled);
+        }).thenCompose(future -> future);
+    }
+
+    /**
+     * Extracts the files of a failed batch one after the other, to find out which of them fail.
+     */
+    private CompletableFuture<List<FileResult>> extractOneByOne(List<Path> batch, List<CompletableFuture<?>> requests,
+                                                                AtomicBoolean cancelled) {
+        CompletableFuture<List<FileResult>> chain = CompletableFuture.completedFuture(new ArrayList<>());
+        for (Path file : batch) {
+            chain = chain.thenCompose(results -> extractBatch(List.of(file), requests, cancelled).thenApply(single -> {
+                results.addAll(single);
+                return results;
+            }));
+        }
+        return chain;
+    }
+
+    private static List<FileResult> failed(List<Path> batch, KreuzbergException failure) {
+        List<FileResult> failed = new ArrayList<>(batch.size());
+        batch.forEach(file -> failed.add(new FileResult(file, null, failure)));
+        return failed;
+    }
+
+    private static KreuzbergException toKreuzbergException(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof KreuzbergException kreuzbergException
+                ? kreuzbergException
+                : new KreuzbergException("Failed to extract files", cause);
+    }
+
+    private static List<Path> listFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(file -> !file.getFileName().toString().startsWith("."))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            // the extraction reports the unreadable file
+            return 0;
+        }
+    }
+
+    /**
+     * The extraction result or the error of a single file.
+     */
+    public static class FileResult {
+
+        private final Path file;
+        private final ExtractionResult result;
+        private final KreuzbergException error;
+
+        FileResult(Path file, ExtractionResult result, KreuzbergException error) {
+            this.file = file;
+            this.result = result;
+            this.error = error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        /**
+         * Returns the extraction result, {@code null} if the extraction failed.
+         */
+        public ExtractionResult getResult() {
+            return result;
+        }
+
+        /**
+         * Returns why the extraction failed, {@code null} if it succeeded.
+         */
+        public KreuzbergException getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Builder for {@link BulkExtractor}.
+     */
+    public static class Builder {
+
+        private final KreuzbergClient client;
+        private ExtractionConfig config;
+        private long maxBatchBytes = 32L * 1024 * 1024;
+        private int maxBatchFiles = 16;
+        private int parallelism = 4;
+        private ExtractionCache cache;
+
+        private Builder(KreuzbergClient client) {
+            if (client == null) {
+                throw new IllegalArgumentException("Client cannot be null");
+            }
+            this.client = client;
+        }
+
+        /**
+         * Sets the extraction configuration used for all files (default none).
+         */
+        public Builder config(ExtractionConfig config) {
+            this.config = config;
+            return this;
+        }
+
+        /**
+         * Sets the maximum total file size of a batch (default 32 MB).
+         */
+        public Builder maxBatchBytes(long maxBatchBytes) {
+            if (maxBatchBytes <= 0) {
+                throw new IllegalArgumentException("maxBatchBytes must be greater than 0");
+            }
+            this.maxBatchBytes = maxBatchBytes;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of files of a batch (default 16).
+         */
+        public Builder maxBatchFiles(int maxBatchFiles) {
+            if (maxBatchFiles <= 0) {
+                throw new IllegalArgumentException("maxBatchFiles must be greater than 0");
+            }
+            this.maxBatchFiles = maxBatchFiles;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of batches extracted at the same time (default 4).
+         */
+        public Builder parallelism(int parallelism) {
+            if (parallelism <= 0) {
+                throw new IllegalArgumentException("parallelism must be greater than 0");
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Sets a cache for the results, files found in it are not extracted again (default none).
+         * The cache should belong to the same client.
+         */
+        public Builder cache(ExtractionCache cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        public BulkExtractor build() {
+            return new BulkExtractor(this);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.deverni.kreuzberg.client;
+
+import com.deverni.kreuzberg.client.exception.CircuitBreakerOpenException;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * OkHttp interceptor that stops sending requests to the Kreuzberg API after it failed repeatedly.
+ *
+ * <p>A request fails if the server looks down or overloaded: the connection failed or timed out, or the
+ * response is a 429, 502, 503 or 504, retries included. Any other response counts as success, also a 500,
+ * which Kreuzberg returns for a single document it cannot extract. After {@code failureThreshold}
+ * consecutive failures the breaker opens and every request fails immediately with a
+ * {@link CircuitBreakerOpenException} instead of waiting for a timeout. After {@code openDuration} a single
+ * trial request is let through: if it succeeds the breaker closes again, if it fails it stays open for
+ * another {@code openDuration}. A cancelled trial request leaves the breaker open, the next request is
+ * the trial then.
+ */
+public class CircuitBreakerInterceptor implements Interceptor {
+
+    /**
+     * The states of the circuit breaker.
+     */
+    public enum State {
+        /** Requests are sent. */
+        CLOSED,
+        /** Requests fail immediately. */
+        OPEN,
+        /** A trial request is in flight, other requests fail immediately. */
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+
+    /**
+     * @param failureThreshold consecutive failures that open the breaker
+     * @param openDuration     how long the breaker stays open before a trial request
+     */
+    public CircuitBreakerInterceptor(int failureThreshold, Duration openDuration) {
+        if (failureThreshold <= 0) {
+            throw new IllegalArgumentException("failureThreshold must be greater than 0");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        boolean trial = acquire();
+        boolean recorded = false;
+        try {
+            Response response = chain.proceed(chain.request());
+            if (isServerDown(response.code())) {
+                onFailure();
+            } else {
+                onSuccess();
+            }
+            recorded = true;
+            return response;
+        } catch (IOException e) {
+            // a cancelled call says nothing about the server
+            if (!chain.call().isCanceled()) {
+                onFailure();
+                recorded = true;
+            }
+            throw e;
+        } finally {
+            if (trial && !recorded) {
+                release();
+            }
+        }
+    }
+
+    /**
+     * Returns whether the status code means that the server is down or overloaded, rather than that it
+     * could not handle this request.
+     */
+    static boolean isServerDown(int statusCode) {
+        return statusCode == 429 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    /**
+     * Returns the current state.
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Lets a request through or throws, returns whether the request is the trial request.
+     */
+    private synchronized boolean acquire() throws CircuitBreakerOpenException {
+        if (state == State.CLOSED) {
+            return false;
+        }
+        long remaining = openNanos - (System.nanoTime() - openedAt);
+        if (state == State.OPEN && remaining <= 0) {
+            // let this request through to find out if the API is back
+            state = State.HALF_OPEN;
+            return true;
+        }
+        throw new CircuitBreakerOpenException(Duration.ofNanos(Math.max(remaining, 0)));
+    }
+
+    /**
+     * Opens the breaker again after a trial request without outcome, keeping the time it opened, so
+     * the next request is the trial.
+     */
+    private synchronized void release() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+        }
+    }
+
+    private synchronized void onSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    private synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || failures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+}
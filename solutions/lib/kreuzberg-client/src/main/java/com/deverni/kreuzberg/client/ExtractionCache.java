@@ -0,0 +1,355 @@
+package com.deverni.kreuzberg.client;
+
+import com.deverni.kreuzberg.client.exception.KreuzbergException;
+import com.deverni.kreuzberg.client.model.ExtractionConfig;
+import com.deverni.kreuzberg.client.model.ExtractionResult;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local disk cache of extraction results in front of a {@link KreuzbergClient}.
+ *
+ * <p>Results are keyed by the SHA-256 of the file content together with the serialized
+ * {@link ExtractionConfig} and the client's {@link ImageDataMode}, so a renamed or copied file is a hit
+ * and a changed file or configuration is a miss. Each entry is stored as gzip compressed JSON in its own
+ * file. When the cache grows beyond {@code maxBytes} the least recently used entries are deleted.
+ * The cache directory can be shared by several processes.
+ *
+ * <p>Example usage:
+ * <pre>{@code
+ * ExtractionCache cache = ExtractionCache.builder(client)
+ *     .directory(Path.of("data/.kreuzberg-cache"))
+ *     .maxBytes(1024L * 1024 * 1024)
+ *     .build();
+ *
+ * List<ExtractionResult> results = cache.extract(config, Path.of("data/manuals/h_4900_b.pdf"));
+ * System.out.println(cache.getStats());
+ * }</pre>
+ */
+public class ExtractionCache {
+
+    private static final String SUFFIX = ".json.gz";
+
+    private final KreuzbergClient client;
+    private final Path directory;
+    private final long maxBytes;
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private ExtractionCache(Builder builder) {
+        this.client = builder.client;
+        this.directory = builder.directory;
+        this.maxBytes = builder.maxBytes;
+        TypeReference<List<ExtractionResult>> type = new TypeReference<>() {};
+        this.reader = client.getObjectMapper().readerFor(type);
+        this.writer = client.getObjectMapper().writerFor(type);
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> entries = entries()) {
+                this.size.set(entries.mapToLong(ExtractionCache::sizeOf).sum());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open extraction cache " + directory, e);
+        }
+    }
+
+    public static Builder builder(KreuzbergClient client) {
+        return new Builder(client);
+    }
+
+    /**
+     * Returns the cached results of the file, or extracts it and caches the results.
+     *
+     * @param config extraction configuration options (can be null)
+     * @param file the file to extract content from
+     * @return list of extraction results
+     * @throws KreuzbergException if the file cannot be read or extraction fails
+     */
+    public List<ExtractionResult> extract(ExtractionConfig config, Path file) throws KreuzbergException {
+        String key = key(config, file);
+        List<ExtractionResult> results = get(key);
+        if (results == null) {
+            results = client.extractPath(config, file);
+            put(key, results);
+        }
+        return results;
+    }
+
+    /**
+     * Computes the cache key of a file, reading it once in a streaming fashion.
+     *
+     * @param config extraction configuration options (can be null)
+     * @param file the file to extract content from
+     * @return the hex encoded key
+     * @throws KreuzbergException if the file cannot be read
+     */
+    public String key(ExtractionConfig config, Path file) throws KreuzbergException {
+        MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            throw new KreuzbergException("Failed to read " + file, e);
+        }
+        try {
+            String configJson = config == null ? "" : client.getObjectMapper().writeValueAsString(config);
+            digest.update((configJson + '\0' + client.getImageDataMode()).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new KreuzbergException("Failed to serialize extraction config", e);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Returns the cached results for the key, and marks them as recently used.
+     *
+     * @param key a key from {@link #key(ExtractionConfig, Path)}
+     * @return the cached results, or {@code null} if there are none
+     */
+    public List<ExtractionResult> get(String key) {
+        Path entry = entry(key);
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(entry))) {
+            List<ExtractionResult> results = reader.readValue(in);
+            touch(entry);
+            hits.incrementAndGet();
+            return results;
+        } catch (IOException e) {
+            // not cached, or a broken entry that is extracted again and replaced
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Caches the results for the key, evicting the least recently used entries if the cache gets too big.
+     *
+     * @param key a key from {@link #key(ExtractionConfig, Path)}
+     * @param results the results to cache
+     */
+    public void put(String key, List<ExtractionResult> results) {
+        Path entry = entry(key);
+        try {
+            Path temp = Files.createTempFile(directory, key, ".tmp");
+            try {
+                try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp))) {
+                    writer.writeValue(out, results);
+                }
+                long previous = Files.exists(entry) ? sizeOf(entry) : 0;
+                Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                size.addAndGet(sizeOf(entry) - previous);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            // the cache is only an optimization, the results are still returned
+            return;
+        }
+        if (size.get() > maxBytes) {
+            evict();
+        }
+    }
+
+    /**
+     * Returns the image data mode of the client the results are extracted with, it applies to cached results too.
+     */
+    public ImageDataMode getImageDataMode() {
+        return client.getImageDataMode();
+    }
+
+    /**
+     * Returns the hit, miss and eviction counts since this cache was created and its current size.
+     */
+    public Stats getStats() {
+        return new Stats(hits.get(), misses.get(), evictions.get(), size.get());
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache is within its size limit.
+     */
+    private synchronized void evict() {
+        if (size.get() <= maxBytes) {
+            return;
+        }
+        List<Path> entries;
+        try (Stream<Path> stream = entries()) {
+            entries = stream.sorted(Comparator.comparing(ExtractionCache::lastModified)).collect(Collectors.toList());
+        } catch (IOException e) {
+            return;
+        }
+        // recount, other processes may have added or removed entries
+        size.set(entries.stream().mapToLong(ExtractionCache::sizeOf).sum());
+        for (Path entry : entries) {
+            if (size.get() <= maxBytes) {
+                break;
+            }
+            long entrySize = sizeOf(entry);
+            try {
+                if (Files.deleteIfExists(entry)) {
+                    size.addAndGet(-entrySize);
+                    evictions.incrementAndGet();
+                }
+            } catch (IOException e) {
+                // in use or already gone, try the next one
+            }
+        }
+    }
+
+    private Path entry(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    private Stream<Path> entries() throws IOException {
+        return Files.list(directory).filter(file -> file.getFileName().toString().endsWith(SUFFIX));
+    }
+
+    private static void touch(Path entry) {
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // only affects the eviction order
+        }
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Usage statistics of an {@link ExtractionCache}.
+     */
+    public static class Stats {
+
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long sizeBytes;
+
+        Stats(long hits, long misses, long evictions, long sizeBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.sizeBytes = sizeBytes;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /**
+         * Returns the total size of the cached entries on disk.
+         */
+        public long getSizeBytes() {
+            return sizeBytes;
+        }
+
+        /**
+         * Returns the share of lookups that were hits, 0 if there were none.
+         */
+        public double getHitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d, misses=%d, hitRate=%.2f, evictions=%d, sizeBytes=%d",
+                    hits, misses, getHitRate(), evictions, sizeBytes);
+        }
+    }
+
+    /**
+     * Builder for {@link ExtractionCache}.
+     */
+    public static class Builder {
+
+        private final KreuzbergClient client;
+        private Path directory = Path.of(System.getProperty("user.home"), ".cache", "kreuzberg-client");
+        private long maxBytes = 1024L * 1024 * 1024;
+
+        private Builder(KreuzbergClient client) {
+            if (client == null) {
+                throw new IllegalArgumentException("Client cannot be null");
+            }
+            this.client = client;
+        }
+
+        /**
+         * Sets the cache directory (default ~/.cache/kreuzberg-client).
+         */
+        public Builder directory(Path directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        /**
+         * Sets the maximum total size of the cached entries on disk (default 1 GB).
+         */
+        public Builder maxBytes(long maxBytes) {
+            if (maxBytes <= 0) {
+                throw new IllegalArgumentException("maxBytes must be greater than 0");
+            }
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * @throws UncheckedIOException if the cache directory cannot be created
+         */
+        public ExtractionCache build() {
+            return new ExtractionCache(this);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.deverni.kreuzberg.client;
+
+/**
+ * Controls how the base64 encoded {@code data} of extracted images is read from a response.
+ *
+ * <p>Images can make up most of a response for scanned documents. When only the text is needed,
+ * {@link #SKIP} passes over the image data in the response stream without ever buffering it, the
+ * remaining image fields (format, page number, dimensions, ...) are still read.
+ *
+ * @see KreuzbergClient#withImageDataMode(ImageDataMode)
+ */
+public enum ImageDataMode {
+
+    /**
+     * Keeps the base64 data of every image, it is only decoded when
+     * {@link com.deverni.kreuzberg.client.model.ImageData#decodeData()} or
+     * {@link com.deverni.kreuzberg.client.model.ImageData#openDataStream()} is called.
+     */
+    INCLUDE,
+
+    /**
+     * Skips the image data, {@link com.deverni.kreuzberg.client.model.ImageData#getData()} is {@code null}.
+     */
+    SKIP
+}
@@ -5,17 +5,22 @@ import com.deverni.kreuzberg.client.model.ErrorResponse;
 import com.deverni.kreuzberg.client.model.ExtractionConfig;
 import com.deverni.kreuzberg.client.model.ExtractionResult;
 import com.deverni.kreuzberg.client.model.HealthResponse;
+import com.deverni.kreuzberg.client.model.ImageData;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import okhttp3.*;
+import okio.BufferedSink;
+import okio.Okio;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -48,6 +53,11 @@ import java.util.concurrent.TimeUnit;
  *     System.out.println("API is healthy");
  * }
  * }</pre>
+ *
+ * <p>Documents are streamed to the server from their file or input stream and responses are parsed
+ * directly from the response stream, so neither the document nor the response JSON is held in memory
+ * as a whole. Use {@link #withImageDataMode(ImageDataMode)} to skip the base64 image data of large
+ * scanned documents while parsing.
  */
 public class KreuzbergClient implements AutoCloseable {
     
@@ -57,6 +67,8 @@ public class KreuzbergClient implements AutoCloseable {
     private final String baseUrl;
     private final OkHttpClient httpClient;
     private final ObjectMapper objectMapper;
+    private final ImageDataMode imageDataMode;
+    private final ObjectReader resultReader;
     
     /**
      * Creates a new Kreuzberg client with default base URL (http://localhost:8000).
@@ -66,7 +78,8 @@ public class KreuzbergClient implements AutoCloseable {
     }
     
     /**
-     * Creates a new Kreuzberg client with the specified base URL.
+     * Creates a new Kreuzberg client with the specified base URL and the defaults of {@link #builder()},
+     * without retries and circuit breaker.
      * 
      * @param baseUrl the base URL of the Kreuzberg API server
      */
@@ -74,6 +87,23 @@ public class KreuzbergClient implements AutoCloseable {
         this(baseUrl, createDefaultHttpClient());
     }
     
+    /**
+     * Returns a builder to configure the timeouts, connection pool, dispatcher, retries and circuit
+     * breaker of a client.
+     * 
+     * <pre>{@code
+     * KreuzbergClient client = KreuzbergClient.builder()
+     *     .baseUrl("http://kreuzberg:8000")
+     *     .maxRequestsPerHost(8)
+     *     .maxRetries(3)
+     *     .circuitBreaker(5, Duration.ofSeconds(30))
+     *     .build();
+     * }</pre>
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+    
     /**
      * Creates a new Kreuzberg client with custom OkHttpClient.
      * 
@@ -81,9 +111,29 @@ public class KreuzbergClient implements AutoCloseable {
      * @param httpClient custom configured OkHttpClient
      */
     public KreuzbergClient(String baseUrl, OkHttpClient httpClient) {
-        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this(baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl,
+                httpClient, createObjectMapper(), ImageDataMode.INCLUDE);
+    }
+
+    private KreuzbergClient(String baseUrl, OkHttpClient httpClient, ObjectMapper objectMapper,
+                            ImageDataMode imageDataMode) {
+        this.baseUrl = baseUrl;
         this.httpClient = httpClient;
-        this.objectMapper = createObjectMapper();
+        this.objectMapper = objectMapper;
+        this.imageDataMode = imageDataMode;
+        this.resultReader = objectMapper.readerFor(new TypeReference<List<ExtractionResult>>() {})
+                .withAttribute(ImageData.SKIP_DATA, imageDataMode == ImageDataMode.SKIP);
+    }
+
+    /**
+     * Returns a client that reads the image data of the results as specified. The returned client
+     * shares the HTTP client of this one, closing either closes both.
+     *
+     * @param imageDataMode whether the base64 image data is kept or skipped
+     * @return a client using the given mode
+     */
+    public KreuzbergClient withImageDataMode(ImageDataMode imageDataMode) {
+        return new KreuzbergClient(baseUrl, httpClient, objectMapper, imageDataMode);
     }
     
     /**
@@ -110,11 +160,7 @@ public class KreuzbergClient implements AutoCloseable {
      * Creates a default OkHttpClient with sensible timeouts.
      */
     private static OkHttpClient createDefaultHttpClient() {
-        return new OkHttpClient.Builder()
-                .connectTimeout(30, TimeUnit.SECONDS)
-                .readTimeout(120, TimeUnit.SECONDS) // Longer timeout for large file processing
-                .writeTimeout(120, TimeUnit.SECONDS)
-                .build();
+        return builder().createHttpClient();
     }
     
     /**
@@ -139,7 +185,7 @@ public class KreuzbergClient implements AutoCloseable {
                 throw new KreuzbergException("Empty response body from health check");
             }
             
-            return objectMapper.readValue(body.string(), HealthResponse.class);
+            return objectMapper.readValue(body.byteStream(), HealthResponse.class);
         } catch (IOException e) {
             throw new KreuzbergException("Failed to perform health check", e);
         }
@@ -188,6 +234,38 @@ public class KreuzbergClient implements AutoCloseable {
      * @throws KreuzbergException if extraction fails
      */
     public List<ExtractionResult> extractFilesWithConfig(ExtractionConfig config, File... files) throws KreuzbergException {
+        return execute(filesBody(files), config, "Failed to extract files");
+    }
+    
+    /**
+     * Extracts content from multiple files asynchronously, in a single request on OkHttp's dispatcher.
+     * 
+     * @param files the files to extract content from
+     * @return a future of the extraction results (one per file)
+     * @see #extractAsync(ExtractionConfig, File...)
+     */
+    public CompletableFuture<List<ExtractionResult>> extractAsync(File... files) {
+        return extractAsync(null, files);
+    }
+    
+    /**
+     * Extracts content from multiple files asynchronously with custom configuration.
+     * 
+     * <p>The request is queued on OkHttp's dispatcher, which bounds the number of concurrent requests
+     * (see {@link Dispatcher#setMaxRequestsPerHost(int)}), and the response is parsed on its thread.
+     * The future completes exceptionally with a {@link KreuzbergException} if extraction fails.
+     * Cancelling the future cancels the request.
+     * 
+     * @param config extraction configuration options (can be null)
+     * @param files the files to extract content from
+     * @return a future of the extraction results (one per file)
+     * @throws IllegalArgumentException if no file is given or a file cannot be read
+     */
+    public CompletableFuture<List<ExtractionResult>> extractAsync(ExtractionConfig config, File... files) {
+        return enqueue(filesBody(files), config, "Failed to extract files");
+    }
+    
+    private MultipartBody filesBody(File... files) {
         if (files == null || files.length == 0) {
             throw new IllegalArgumentException("At least one file must be provided");
         }
@@ -212,58 +290,30 @@ public class KreuzbergClient implements AutoCloseable {
             );
         }
         
-        RequestBody requestBody = bodyBuilder.build();
-        
-        // Build URL with query parameters if using simple config
-        HttpUrl.Builder urlBuilder = HttpUrl.parse(baseUrl + "/extract").newBuilder();
-        
-        // Build request
-        Request.Builder requestBuilder = new Request.Builder()
-                .url(urlBuilder.build())
-                .post(requestBody);
-        
-        // Add configuration via header if provided
-        if (config != null) {
-            try {
-                String configJson = objectMapper.writeValueAsString(config);
-                requestBuilder.addHeader("X-Extraction-Config", configJson);
-            } catch (IOException e) {
-                throw new KreuzbergException("Failed to serialize extraction config", e);
-            }
-        }
-        
-        Request request = requestBuilder.build();
-        
-        try (Response response = httpClient.newCall(request).execute()) {
-            ResponseBody body = response.body();
-            if (body == null) {
-                throw new KreuzbergException(response.code(), "Empty response body");
-            }
-            
-            String responseBody = body.string();
-            //Files.writeString(Path.of("./kreuzberg.json"),responseBody, StandardOpenOption.CREATE);
-
-            if (!response.isSuccessful()) {
-                ErrorResponse errorResponse = null;
-                try {
-                    errorResponse = objectMapper.readValue(responseBody, ErrorResponse.class);
-                } catch (IOException e) {
-                    // Failed to parse error response, use raw body
-                }
-                
-                if (errorResponse != null) {
-                    throw new KreuzbergException(response.code(), errorResponse);
-                } else {
-                    throw new KreuzbergException(response.code(), responseBody);
-                }
-            }
-            
-            // Parse successful response
-            return objectMapper.readValue(responseBody, new TypeReference<List<ExtractionResult>>() {});
-            
-        } catch (IOException e) {
-            throw new KreuzbergException("Failed to extract files", e);
-        }
+        return bodyBuilder.build();
+    }
+    
+    /**
+     * Extracts content from a file given by its path.
+     * 
+     * @param path the file to extract content from
+     * @return list of extraction results
+     * @throws KreuzbergException if extraction fails
+     */
+    public List<ExtractionResult> extractPath(Path path) throws KreuzbergException {
+        return extractPath(null, path);
+    }
+    
+    /**
+     * Extracts content from a file given by its path, see {@link #extractFile(ExtractionConfig, File)}.
+     * 
+     * @param config extraction configuration options (can be null)
+     * @param path the file to extract content from
+     * @return list of extraction results
+     * @throws KreuzbergException if extraction fails
+     */
+    public List<ExtractionResult> extractPath(ExtractionConfig config, Path path) throws KreuzbergException {
+        return extractFilesWithConfig(config, path.toFile());
     }
     
     /**
@@ -289,6 +339,23 @@ public class KreuzbergClient implements AutoCloseable {
      */
     public List<ExtractionResult> extractBytes(ExtractionConfig config, byte[] data, String filename) 
             throws KreuzbergException {
+        return execute(bytesBody(data, filename), config, "Failed to extract bytes");
+    }
+    
+    /**
+     * Extracts content from a byte array asynchronously, see {@link #extractAsync(ExtractionConfig, File...)}.
+     * 
+     * @param config extraction configuration options (can be null)
+     * @param data the file data
+     * @param filename the filename (used to detect content type)
+     * @return a future of the extraction results
+     */
+    public CompletableFuture<List<ExtractionResult>> extractBytesAsync(ExtractionConfig config, byte[] data,
+                                                                       String filename) {
+        return enqueue(bytesBody(data, filename), config, "Failed to extract bytes");
+    }
+    
+    private MultipartBody bytesBody(byte[] data, String filename) {
         if (data == null || data.length == 0) {
             throw new IllegalArgumentException("Data cannot be null or empty");
         }
@@ -298,7 +365,7 @@ public class KreuzbergClient implements AutoCloseable {
         
         String mimeType = detectMimeTypeFromFilename(filename);
         
-        MultipartBody requestBody = new MultipartBody.Builder()
+        return new MultipartBody.Builder()
                 .setType(MultipartBody.FORM)
                 .addFormDataPart(
                         "data",
@@ -306,52 +373,6 @@ public class KreuzbergClient implements AutoCloseable {
                         RequestBody.create(data, MediaType.parse(mimeType))
                 )
                 .build();
-        
-        HttpUrl.Builder urlBuilder = HttpUrl.parse(baseUrl + "/extract").newBuilder();
-        
-        Request.Builder requestBuilder = new Request.Builder()
-                .url(urlBuilder.build())
-                .post(requestBody);
-        
-        if (config != null) {
-            try {
-                String configJson = objectMapper.writeValueAsString(config);
-                requestBuilder.addHeader("X-Extraction-Config", configJson);
-            } catch (IOException e) {
-                throw new KreuzbergException("Failed to serialize extraction config", e);
-            }
-        }
-        
-        Request request = requestBuilder.build();
-        
-        try (Response response = httpClient.newCall(request).execute()) {
-            ResponseBody body = response.body();
-            if (body == null) {
-                throw new KreuzbergException(response.code(), "Empty response body");
-            }
-            
-            String responseBody = body.string();
-            
-            if (!response.isSuccessful()) {
-                ErrorResponse errorResponse = null;
-                try {
-                    errorResponse = objectMapper.readValue(responseBody, ErrorResponse.class);
-                } catch (IOException e) {
-                    // Failed to parse error response
-                }
-                
-                if (errorResponse != null) {
-                    throw new KreuzbergException(response.code(), errorResponse);
-                } else {
-                    throw new KreuzbergException(response.code(), responseBody);
-                }
-            }
-            
-            return objectMapper.readValue(responseBody, new TypeReference<List<ExtractionResult>>() {});
-            
-        } catch (IOException e) {
-            throw new KreuzbergException("Failed to extract bytes", e);
-        }
     }
     
     /**
@@ -370,6 +391,9 @@ public class KreuzbergClient implements AutoCloseable {
     /**
      * Extracts content from an InputStream with custom configuration.
      * 
+     * <p>The stream is sent as it is read, in chunks, and is not closed. A request whose body was
+     * already sent cannot be retried, as the stream can only be read once.
+     * 
      * @param config extraction configuration options (can be null)
      * @param inputStream the input stream containing file data
      * @param filename the filename (used to detect content type)
@@ -378,14 +402,140 @@ public class KreuzbergClient implements AutoCloseable {
      */
     public List<ExtractionResult> extractStream(ExtractionConfig config, InputStream inputStream, String filename) 
             throws KreuzbergException {
-        try {
-            byte[] data = inputStream.readAllBytes();
-            return extractBytes(config, data, filename);
+        if (inputStream == null) {
+            throw new IllegalArgumentException("Input stream cannot be null");
+        }
+        if (filename == null || filename.isEmpty()) {
+            throw new IllegalArgumentException("Filename cannot be null or empty");
+        }
+        
+        MediaType mediaType = MediaType.parse(detectMimeTypeFromFilename(filename));
+        RequestBody streamBody = new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return mediaType;
+            }
+            
+            @Override
+            public long contentLength() {
+                // unknown, the multipart body is sent with chunked transfer encoding
+                return -1;
+            }
+            
+            @Override
+            public boolean isOneShot() {
+                return true;
+            }
+            
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                // not closed, the caller owns the stream
+                sink.writeAll(Okio.source(inputStream));
+            }
+        };
+        
+        MultipartBody requestBody = new MultipartBody.Builder()
+                .setType(MultipartBody.FORM)
+                .addFormDataPart("data", filename, streamBody)
+                .build();
+        
+        return execute(requestBody, config, "Failed to extract stream");
+    }
+    
+    /**
+     * Posts the multipart body to the extract endpoint and parses the results from the response stream.
+     */
+    private List<ExtractionResult> execute(RequestBody requestBody, ExtractionConfig config, String failure)
+            throws KreuzbergException {
+        try (Response response = httpClient.newCall(extractRequest(requestBody, config)).execute()) {
+            return readResults(response);
         } catch (IOException e) {
-            throw new KreuzbergException("Failed to read input stream", e);
+            throw new KreuzbergException(failure, e);
         }
     }
     
+    /**
+     * Queues the multipart body for the extract endpoint, the results are parsed on the dispatcher thread.
+     */
+    private CompletableFuture<List<ExtractionResult>> enqueue(RequestBody requestBody, ExtractionConfig config,
+                                                              String failure) {
+        CompletableFuture<List<ExtractionResult>> future = new CompletableFuture<>();
+        Call call;
+        try {
+            call = httpClient.newCall(extractRequest(requestBody, config));
+        } catch (KreuzbergException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                future.completeExceptionally(new KreuzbergException(failure, e));
+            }
+            
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (response) {
+                    future.complete(readResults(response));
+                } catch (KreuzbergException e) {
+                    future.completeExceptionally(e);
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(new KreuzbergException(failure, e));
+                }
+            }
+        });
+        future.whenComplete((results, e) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        return future;
+    }
+    
+    private Request extractRequest(RequestBody requestBody, ExtractionConfig config) throws KreuzbergException {
+        Request.Builder requestBuilder = new Request.Builder()
+                .url(baseUrl + "/extract")
+                .post(requestBody);
+        
+        // Add configuration via header if provided
+        if (config != null) {
+            try {
+                String configJson = objectMapper.writeValueAsString(config);
+                requestBuilder.addHeader("X-Extraction-Config", configJson);
+            } catch (IOException e) {
+                throw new KreuzbergException("Failed to serialize extraction config", e);
+            }
+        }
+        return requestBuilder.build();
+    }
+    
+    private List<ExtractionResult> readResults(Response response) throws KreuzbergException, IOException {
+        ResponseBody body = response.body();
+        if (body == null) {
+            throw new KreuzbergException(response.code(), "Empty response body");
+        }
+        
+        if (!response.isSuccessful()) {
+            // error responses are small, read them as a whole
+            String responseBody = body.string();
+            ErrorResponse errorResponse = null;
+            try {
+                errorResponse = objectMapper.readValue(responseBody, ErrorResponse.class);
+            } catch (IOException e) {
+                // Failed to parse error response, use raw body
+            }
+            
+            if (errorResponse != null) {
+                throw new KreuzbergException(response.code(), errorResponse);
+            } else {
+                throw new KreuzbergException(response.code(), responseBody);
+            }
+        }
+        
+        // Parse successful response while it is received, without a copy of the JSON
+        return resultReader.readValue(body.byteStream());
+    }
+    
     /**
      * Detects MIME type from a file.
      */
@@ -434,6 +584,13 @@ public class KreuzbergClient implements AutoCloseable {
         return httpClient;
     }
     
+    /**
+     * Returns how the image data of the results is read.
+     */
+    public ImageDataMode getImageDataMode() {
+        return imageDataMode;
+    }
+    
     /**
      * Returns the ObjectMapper used for JSON serialization/deserialization.
      */
@@ -447,4 +604,173 @@ public class KreuzbergClient implements AutoCloseable {
         httpClient.dispatcher().executorService().shutdown();
         httpClient.connectionPool().evictAll();
     }
+    
+    /**
+     * Builder for {@link KreuzbergClient}, the defaults are the ones of {@link #KreuzbergClient(String)}.
+     * Retries and the circuit breaker are off unless configured.
+     */
+    public static class Builder {
+        
+        private String baseUrl = DEFAULT_BASE_URL;
+        private Duration connectTimeout = Duration.ofSeconds(30);
+        private Duration readTimeout = Duration.ofSeconds(120); // Longer timeout for large file processing
+        private Duration writeTimeout = Duration.ofSeconds(120);
+        private int maxIdleConnections = 5;
+        private Duration keepAlive = Duration.ofMinutes(5);
+        private int maxRequests = 64;
+        private int maxRequestsPerHost = 5;
+        private int maxRetries = 0;
+        private Duration initialBackoff = Duration.ofMillis(500);
+        private Duration maxBackoff = Duration.ofSeconds(30);
+        private int circuitBreakerFailureThreshold = 0;
+        private Duration circuitBreakerOpenDuration = Duration.ofSeconds(30);
+        private ImageDataMode imageDataMode = ImageDataMode.INCLUDE;
+        
+        private Builder() {
+        }
+        
+        /**
+         * Sets the base URL of the Kreuzberg API server (default http://localhost:8000).
+         */
+        public Builder baseUrl(String baseUrl) {
+            this.baseUrl = baseUrl;
+            return this;
+        }
+        
+        /**
+         * Sets the connect timeout (default 30 seconds).
+         */
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+        
+        /**
+         * Sets the read timeout, the longest wait for the next bytes of a response (default 120 seconds).
+         */
+        public Builder readTimeout(Duration readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+        
+        /**
+         * Sets the write timeout (default 120 seconds).
+         */
+        public Builder writeTimeout(Duration writeTimeout) {
+            this.writeTimeout = writeTimeout;
+            return this;
+        }
+        
+        /**
+         * Sets the number of idle connections kept in the pool (default 5).
+         */
+        public Builder maxIdleConnections(int maxIdleConnections) {
+            if (maxIdleConnections < 0) {
+                throw new IllegalArgumentException("maxIdleConnections must not be negative");
+            }
+            this.maxIdleConnections = maxIdleConnections;
+            return this;
+        }
+        
+        /**
+         * Sets how long an idle connection is kept in the pool (default 5 minutes).
+         */
+        public Builder keepAlive(Duration keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+        
+        /**
+         * Sets the maximum number of concurrent asynchronous requests (default 64).
+         */
+        public Builder maxRequests(int maxRequests) {
+            if (maxRequests <= 0) {
+                throw new IllegalArgumentException("maxRequests must be greater than 0");
+            }
+            this.maxRequests = maxRequests;
+            return this;
+        }
+        
+        /**
+         * Sets the maximum number of concurrent asynchronous requests to the server (default 5), this
+         * bounds the parallelism of {@link BulkExtractor}.
+         */
+        public Builder maxRequestsPerHost(int maxRequestsPerHost) {
+            if (maxRequestsPerHost <= 0) {
+                throw new IllegalArgumentException("maxRequestsPerHost must be greater than 0");
+            }
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            return this;
+        }
+        
+        /**
+         * Sets how often a request failing with 429, 502, 503, 504 or a connection error is retried
+         * (default 0, no retries).
+         */
+        public Builder maxRetries(int maxRetries) {
+            if (maxRetries < 0) {
+                throw new IllegalArgumentException("maxRetries must not be negative");
+            }
+            this.maxRetries = maxRetries;
+            return this;
+        }
+        
+        /**
+         * Sets the exponential backoff between retries (default 500 ms doubling up to 30 seconds).
+         */
+        public Builder retryBackoff(Duration initialBackoff, Duration maxBackoff) {
+            this.initialBackoff = initialBackoff;
+            this.maxBackoff = maxBackoff;
+            return this;
+        }
+        
+        /**
+         * Configures the circuit breaker, see {@link CircuitBreakerInterceptor}. It is off by default, a
+         * threshold of 0 disables it again.
+         * 
+         * @param failureThreshold consecutive failed requests that open the breaker
+         * @param openDuration how long requests fail immediately before a trial request
+         */
+        public Builder circuitBreaker(int failureThreshold, Duration openDuration) {
+            if (failureThreshold < 0) {
+                throw new IllegalArgumentException("failureThreshold must not be negative");
+            }
+            this.circuitBreakerFailureThreshold = failureThreshold;
+            this.circuitBreakerOpenDuration = openDuration;
+            return this;
+        }
+        
+        /**
+         * Sets how the image data of results is read (default {@link ImageDataMode#INCLUDE}).
+         */
+        public Builder imageDataMode(ImageDataMode imageDataMode) {
+            this.imageDataMode = imageDataMode;
+            return this;
+        }
+        
+        public KreuzbergClient build() {
+            KreuzbergClient client = new KreuzbergClient(baseUrl, createHttpClient());
+            return imageDataMode == ImageDataMode.INCLUDE ? client : client.withImageDataMode(imageDataMode);
+        }
+        
+        private OkHttpClient createHttpClient() {
+            Dispatcher dispatcher = new Dispatcher();
+            dispatcher.setMaxRequests(maxRequests);
+            dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+            OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                    .connectTimeout(connectTimeout)
+                    .readTimeout(readTimeout)
+                    .writeTimeout(writeTimeout)
+                    .connectionPool(new ConnectionPool(maxIdleConnections, keepAlive.toMillis(), TimeUnit.MILLISECONDS))
+                    .dispatcher(dispatcher);
+            // the breaker sees the outcome after all retries, an open breaker is not retried
+            if (circuitBreakerFailureThreshold > 0) {
+                builder.addInterceptor(new CircuitBreakerInterceptor(circuitBreakerFailureThreshold, circuitBreakerOpenDuration));
+            }
+            if (maxRetries > 0) {
+                builder.addInterceptor(new RetryInterceptor(maxRetries, initialBackoff, maxBackoff));
+            }
+            return builder.build();
+        }
+    }
 }
@@ -0,0 +1,111 @@
+package com.deverni.kreuzberg.client;
+
+import okhttp3.Interceptor;
+import okhttp3.MultipartBody;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * OkHttp interceptor that retries requests rejected with 429 (too many requests), 502, 503 or 504, and
+ * requests that could not connect. Other errors, like the 500 of a document that cannot be extracted,
+ * are returned at once.
+ *
+ * <p>The waits between the attempts grow exponentially from {@code initialBackoff} up to
+ * {@code maxBackoff}, with random jitter so that parallel requests do not retry in lockstep. A
+ * {@code Retry-After} header in seconds is honored up to {@code maxBackoff}. Requests with a one-shot
+ * body, like the ones of {@link KreuzbergClient#extractStream(java.io.InputStream, String)}, are never retried
+ * because their body cannot be sent again. The retries block the calling thread, for asynchronous calls
+ * a thread of OkHttp's dispatcher.
+ */
+public class RetryInterceptor implements Interceptor {
+
+    private final int maxRetries;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+
+    /**
+     * @param maxRetries     how often a request is repeated at most, 0 disables retries
+     * @param initialBackoff wait before the first retry
+     * @param maxBackoff     longest wait between two attempts
+     */
+    public RetryInterceptor(int maxRetries, Duration initialBackoff, Duration maxBackoff) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries must not be negative");
+        }
+        this.maxRetries = maxRetries;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        boolean repeatable = !isOneShot(request.body());
+        for (int attempt = 0; ; attempt++) {
+            boolean retry = repeatable && attempt < maxRetries;
+            Response response;
+            try {
+                response = chain.proceed(request);
+            } catch (ConnectException e) {
+                if (!retry) {
+                    throw e;
+                }
+                sleep(backoff(attempt, null));
+                continue;
+            }
+            if (!retry || !isRetryable(response.code())) {
+                return response;
+            }
+            Duration wait = backoff(attempt, response.header("Retry-After"));
+            response.close();
+            sleep(wait);
+        }
+    }
+
+    /**
+     * A multipart body does not report its one-shot parts itself.
+     */
+    private static boolean isOneShot(RequestBody body) {
+        if (body instanceof MultipartBody multipart) {
+            return multipart.parts().stream().anyMatch(part -> part.body().isOneShot());
+        }
+        return body != null && body.isOneShot();
+    }
+
+    static boolean isRetryable(int statusCode) {
+        return CircuitBreakerInterceptor.isServerDown(statusCode);
+    }
+
+    private Duration backoff(int attempt, String retryAfter) {
+        if (retryAfter != null) {
+            try {
+                Duration requested = Duration.ofSeconds(Long.parseLong(retryAfter.trim()));
+                if (requested.isNegative()) {
+                    return Duration.ZERO;
+                }
+                return requested.compareTo(maxBackoff) > 0 ? maxBackoff : requested;
+            } catch (NumberFormatException e) {
+                // an HTTP date, use the own backoff
+            }
+        }
+        long max = Math.min(maxBackoff.toMillis(), initialBackoff.toMillis() << Math.min(attempt, 30));
+        // full jitter between half and the whole backoff
+        return Duration.ofMillis(max / 2 + ThreadLocalRandom.current().nextLong(max / 2 + 1));
+    }
+
+    private static void sleep(Duration duration) throws InterruptedIOException {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+}
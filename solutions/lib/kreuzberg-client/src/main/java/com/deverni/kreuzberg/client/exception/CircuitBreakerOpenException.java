@@ -0,0 +1,25 @@
+package com.deverni.kreuzberg.client.exception;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Thrown instead of sending a request while the circuit breaker is open, because the Kreuzberg API
+ * failed repeatedly. The client reports it as the cause of a {@link KreuzbergException}.
+ */
+public class CircuitBreakerOpenException extends IOException {
+
+    private final Duration retryAfter;
+
+    public CircuitBreakerOpenException(Duration retryAfter) {
+        super("Kreuzberg API is unavailable, circuit breaker is open for another " + retryAfter.toMillis() + " ms");
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Returns how long the circuit breaker stays open.
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -2,16 +2,35 @@ package com.deverni.kreuzberg.client.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
-
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.Base64;
 import java.util.List;
 
 /**
  * Represents an extracted image from a document.
+ *
+ * <p>The image is kept as it was received, base64 encoded, and only decoded on request with
+ * {@link #decodeData()} or {@link #openDataStream()}.
  */
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class ImageData {
-    
+
+    /**
+     * Deserialization attribute, if {@code Boolean.TRUE} the image data is skipped while parsing.
+     */
+    public static final String SKIP_DATA = ImageData.class.getName() + ".skipData";
+
     @JsonProperty("data")
+    @JsonDeserialize(using = SkippableDataDeserializer.class)
     private String data; // Base64 encoded data URI
     
     @JsonProperty("format")
@@ -48,6 +67,49 @@ public class ImageData {
         this.data = data;
     }
 
+    /**
+     * Decodes the image data.
+     *
+     * @return the image bytes, or {@code null} if there is no data or it was skipped
+     */
+    public byte[] decodeData() {
+        if (data == null) {
+            return null;
+        }
+        return Base64.getMimeDecoder().decode(data.substring(payloadStart()));
+    }
+
+    /**
+     * Opens a stream that decodes the image data while it is read, without a decoded copy in memory.
+     *
+     * @return the image bytes, empty if there is no data or it was skipped
+     */
+    public InputStream openDataStream() {
+        if (data == null) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        StringReader reader = new StringReader(data);
+        try {
+            reader.skip(payloadStart());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // base64 is ASCII, every char is one byte
+        return Base64.getMimeDecoder().wrap(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                return reader.read();
+            }
+        });
+    }
+
+    /**
+     * @return the index after the "data:image/...;base64," prefix of a data URI, 0 for plain base64
+     */
+    private int payloadStart() {
+        return data.startsWith("data:") ? data.indexOf(',') + 1 : 0;
+    }
+
     public String getFormat() {
         return format;
     }
@@ -111,4 +173,19 @@ public class ImageData {
     public void setDescription(String description) {
         this.description = description;
     }
+
+    /**
+     * Reads the image data as a string, or passes over it without reading it if {@link #SKIP_DATA} is set.
+     */
+    public static class SkippableDataDeserializer extends JsonDeserializer<String> {
+
+        @Override
+        public String deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            if (Boolean.TRUE.equals(context.getAttribute(SKIP_DATA))) {
+                // the parser skips the unread string when it moves to the next token
+                return null;
+            }
+            return parser.getValueAsString();
+        }
+    }
 }
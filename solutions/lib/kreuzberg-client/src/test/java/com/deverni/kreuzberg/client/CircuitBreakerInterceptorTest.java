@@ -0,0 +1,128 @@
+package com.deverni.kreuzberg.client;
+
+import com.deverni.kreuzberg.client.exception.CircuitBreakerOpenException;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerInterceptorTest {
+
+    private static final Duration OPEN_DURATION = Duration.ofMillis(100);
+
+    private MockWebServer server;
+    private CircuitBreakerInterceptor breaker;
+    private OkHttpClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        breaker = new CircuitBreakerInterceptor(2, OPEN_DURATION);
+        client = new OkHttpClient.Builder().addInterceptor(breaker).build();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        client.dispatcher().executorService().shutdown();
+        server.shutdown();
+    }
+
+    @Test
+    void opensAfterConsecutiveServerDownResponses() throws IOException {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(502));
+
+        assertEquals(503, execute());
+        assertEquals(CircuitBreakerInterceptor.State.CLOSED, breaker.getState());
+        assertEquals(502, execute());
+        assertEquals(CircuitBreakerInterceptor.State.OPEN, breaker.getState());
+        assertThrows(CircuitBreakerOpenException.class, this::execute);
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    void internalServerErrorDoesNotOpen() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            server.enqueue(new MockResponse().setResponseCode(500));
+        }
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(500, execute());
+        }
+        assertEquals(CircuitBreakerInterceptor.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void closesAfterSuccessfulTrial() throws Exception {
+        open();
+        server.enqueue(new MockResponse().setResponseCode(200));
+
+        assertEquals(200, execute());
+        assertEquals(CircuitBreakerInterceptor.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void cancelledTrialLeavesBreakerOpenForNextTrial() throws Exception {
+        open();
+        server.enqueue(new MockResponse().setResponseCode(200).setHeadersDelay(5, TimeUnit.SECONDS));
+        CountDownLatch done = new CountDownLatch(1);
+        Call trial = client.newCall(new Request.Builder().url(server.url("/health")).build());
+        trial.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                done.countDown();
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+                done.countDown();
+            }
+        });
+        // the two requests that opened the breaker, then the trial
+        for (int i = 0; i < 3; i++) {
+            server.takeRequest(5, TimeUnit.SECONDS);
+        }
+        assertEquals(CircuitBreakerInterceptor.State.HALF_OPEN, breaker.getState());
+
+        trial.cancel();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(CircuitBreakerInterceptor.State.OPEN, breaker.getState());
+
+        // the open duration has passed already, so the next request is the trial
+        server.enqueue(new MockResponse().setResponseCode(200));
+        assertEquals(200, execute());
+        assertEquals(CircuitBreakerInterceptor.State.CLOSED, breaker.getState());
+    }
+
+    private void open() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(503));
+        execute();
+        execute();
+        assertEquals(CircuitBreakerInterceptor.State.OPEN, breaker.getState());
+        Thread.sleep(OPEN_DURATION.toMillis() + 50);
+    }
+
+    private int execute() throws IOException {
+        try (Response response = client.newCall(new Request.Builder().url(server.url("/health")).build()).execute()) {
+            return response.code();
+        }
+    }
+}
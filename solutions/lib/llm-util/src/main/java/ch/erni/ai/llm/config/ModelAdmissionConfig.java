@@ -0,0 +1,49 @@
+package ch.erni.ai.llm.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Configuration
+@ConfigurationProperties(prefix = "application.model-admission")
+@Data
+public class ModelAdmissionConfig {
+
+    /**
+     * Admission limits of one model. Requests beyond {@code maxConcurrent} wait in a queue of at most
+     * {@code maxQueued} requests for at most {@code maxWait}, requests that do not fit into the queue fail at once.
+     */
+    @Data
+    public static class Limits {
+        private int maxConcurrent;
+        private int maxQueued;
+        private Duration maxWait;
+
+        public Limits() {
+        }
+
+        public Limits(int maxConcurrent, int maxQueued, Duration maxWait) {
+            this.maxConcurrent = maxConcurrent;
+            this.maxQueued = maxQueued;
+            this.maxWait = maxWait;
+        }
+    }
+
+    private boolean enabled = true;
+    /**
+     * Limits of every chat model without its own limits.
+     */
+    private Limits chat = new Limits(4, 32, Duration.ofSeconds(60));
+    /**
+     * Limits of every embedding model without its own limits.
+     */
+    private Limits embedding = new Limits(2, 64, Duration.ofSeconds(60));
+    /**
+     * Limits by model id.
+     */
+    private Map<String, Limits> models = new HashMap<>();
+}
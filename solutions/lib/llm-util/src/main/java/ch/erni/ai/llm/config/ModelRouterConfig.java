@@ -0,0 +1,40 @@
+package ch.erni.ai.llm.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+@ConfigurationProperties(prefix = "application.model-router")
+@Data
+public class ModelRouterConfig {
+
+    /**
+     * An OpenAI compatible server, e.g. an LM Studio instance.
+     */
+    @Data
+    public static class Endpoint {
+        private String name;
+        private String baseUrl;
+        private String apiKey = "ignored";
+    }
+
+    /**
+     * Route model calls over the endpoints below instead of the single LM Studio server.
+     */
+    private boolean enabled = false;
+    private List<Endpoint> endpoints = new ArrayList<>();
+    /**
+     * Interval in which the models of every endpoint are listed, an endpoint that does not answer receives no
+     * requests until it answers again.
+     */
+    private Duration healthCheckInterval = Duration.ofSeconds(15);
+    /**
+     * Maximum number of endpoints a call is tried on before its error is returned.
+     */
+    private int maxAttempts = 2;
+}
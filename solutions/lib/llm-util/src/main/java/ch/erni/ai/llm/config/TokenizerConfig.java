@@ -1,9 +1,11 @@
 package ch.erni.ai.llm.config;
 
+import ch.erni.ai.llm.service.LoadingFromHuggingFaceTokenEstimator;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.nio.file.Path;
 import java.util.List;
 
 @Configuration
@@ -17,5 +19,27 @@ public class TokenizerConfig {
         private String path;
     }
 
+    @Data
+    public static class CountCache {
+        private boolean enabled = true;
+        /**
+         * Upper bound of the total length of all cached texts.
+         */
+        private long maxChars = 8_000_000;
+        /**
+         * Count a text that extends a text counted just before by only tokenizing the appended part.
+         */
+        private boolean incremental = true;
+    }
+
     private List<TokenizerPath> tokenizer;
+    /**
+     * Directory the tokenizer.json files are downloaded to and loaded from.
+     */
+    private Path cacheDir = LoadingFromHuggingFaceTokenEstimator.DEFAULT_CACHE_DIR;
+    /**
+     * Only load tokenizers from the cache directory or local paths, never download.
+     */
+    private boolean offline = false;
+    private CountCache countCache = new CountCache();
 }
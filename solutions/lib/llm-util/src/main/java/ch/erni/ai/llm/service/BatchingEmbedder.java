@@ -0,0 +1,108 @@
+package ch.erni.ai.llm.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Embeds text segments with as few requests as possible.
+ * <p>
+ * Segments are grouped into batches of at most {@code maxTokensPerBatch} tokens and {@code maxSegmentsPerBatch}
+ * segments, each batch is sent with a single {@link EmbeddingModel#embedAll(List)} call. A segment that alone
+ * exceeds the token budget is sent in its own batch.
+ */
+public class BatchingEmbedder {
+
+    private final EmbeddingModel embeddingModel;
+    private final TokenCountEstimator tokenCountEstimator;
+    private final int maxTokensPerBatch;
+    private final int maxSegmentsPerBatch;
+
+    public BatchingEmbedder(EmbeddingModel embeddingModel, TokenCountEstimator tokenCountEstimator,
+                            int maxTokensPerBatch, int maxSegmentsPerBatch) {
+        if (maxTokensPerBatch <= 0 || maxSegmentsPerBatch <= 0) {
+            throw new IllegalArgumentException("batch limits must be greater than 0");
+        }
+        this.embeddingModel = embeddingModel;
+        this.tokenCountEstimator = tokenCountEstimator;
+        this.maxTokensPerBatch = maxTokensPerBatch;
+        this.maxSegmentsPerBatch = maxSegmentsPerBatch;
+    }
+
+    /**
+     * Groups the segments into batches, keeping their order.
+     */
+    public List<List<TextSegment>> batches(List<TextSegment> segments) {
+        List<List<TextSegment>> batches = new ArrayList<>();
+        List<TextSegment> batch = new ArrayList<>();
+        int batchTokens = 0;
+        for (TextSegment segment : segments) {
+            int tokens = tokenCountEstimator.estimateTokenCountInText(segment.text());
+            if (!batch.isEmpty() && (batchTokens + tokens > maxTokensPerBatch || batch.size() >= maxSegmentsPerBatch)) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchTokens = 0;
+            }
+            batch.add(segment);
+            batchTokens += tokens;
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    /**
+     * Embeds all segments, one request per batch.
+     *
+     * @return the embeddings in the order of the segments and the summed token usage of all requests
+     */
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        List<Embedding> embeddings = new ArrayList<>(segments.size());
+        TokenUsage tokenUsage = null;
+        for (List<TextSegment> batch : batches(segments)) {
+            Response<List<Embedding>> response = embeddingModel.embedAll(batch);
+            embeddings.addAll(response.content());
+            tokenUsage = TokenUsage.sum(tokenUsage, response.tokenUsage());
+        }
+        return Response.from(embeddings, tokenUsage);
+    }
+
+    /**
+     * Embeds all segments and adds them to the store with a single {@link EmbeddingStore#addAll(List, List)}
+     * per batch.
+     *
+     * @return the ids of the stored embeddings in the order of the segments
+     */
+    public List<String> embedAndStore(List<TextSegment> segments, EmbeddingStore<TextSegment> embeddingStore) {
+        List<String> ids = new ArrayList<>(segments.size());
+        for (List<TextSegment> batch : batches(segments)) {
+            Response<List<Embedding>> response = embeddingModel.embedAll(batch);
+            ids.addAll(embeddingStore.addAll(response.content(), batch));
+        }
+        return ids;
+    }
+
+    /**
+     * Like {@link #embedAndStore(List, EmbeddingStore)}, but with given ids, so storing the same segments again
+     * replaces them instead of adding duplicates.
+     */
+    public void embedAndStore(List<String> ids, List<TextSegment> segments, EmbeddingStore<TextSegment> embeddingStore) {
+        if (ids.size() != segments.size()) {
+            throw new IllegalArgumentException("one id per segment is required");
+        }
+        int offset = 0;
+        for (List<TextSegment> batch : batches(segments)) {
+            Response<List<Embedding>> response = embeddingModel.embedAll(batch);
+            embeddingStore.addAll(ids.subList(offset, offset + batch.size()), response.content(), batch);
+            offset += batch.size();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package ch.erni.ai.llm.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.TokenCountEstimator;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Remembers the token counts of texts counted before.
+ * <p>
+ * The document splitters count the same paragraphs, sentences and separators again on every level of the split
+ * and for the overlap, a text is only tokenized the first time. The cache is keyed by the text and bounded by the
+ * total number of cached characters, so one instance should be used per tokenizer.
+ * <p>
+ * The splitters also count every segment again after appending the next part to it. A text that extends one of
+ * the last long texts counted on the same thread is therefore counted incrementally: only the appended part and
+ * the last words before it are tokenized, cut at a single space between two words. This is exact for tokenizers
+ * that never merge across such a space (BERT, SentencePiece and byte level BPE tokenizers split there), otherwise
+ * the count may be off by a token per join.
+ * Messages are passed to the delegate uncached. Use {@link #of(TokenCountEstimator, long, boolean)} to keep a
+ * {@link TokenOffsetEstimator} delegate offset-capable, see {@link CachingTokenOffsetEstimator}.
+ */
+public class CachingTokenCountEstimator implements TokenCountEstimator {
+
+    private record Counted(String text, int tokens) {
+    }
+
+    private static final int MIN_INCREMENTAL_LENGTH = 1024;
+    private static final int RECOUNTED_TAIL = 256;
+    private static final int RECENT_TEXTS = 4;
+
+    private final TokenCountEstimator delegate;
+    private final Cache<String, Integer> cache;
+    private final boolean incremental;
+    private final ThreadLocal<Deque<Counted>> recent = ThreadLocal.withInitial(ArrayDeque::new);
+
+    public CachingTokenCountEstimator(TokenCountEstimator delegate, long maxCachedChars) {
+        this(delegate, maxCachedChars, true);
+    }
+
+    /**
+     * @return a {@link CachingTokenOffsetEstimator} if the delegate is a {@link TokenOffsetEstimator}, so it can
+     * still be used for splitting by token offsets
+     */
+    public static CachingTokenCountEstimator of(TokenCountEstimator delegate, long maxCachedChars, boolean incremental) {
+        if (delegate instanceof TokenOffsetEstimator offsetEstimator) {
+            return new CachingTokenOffsetEstimator(offsetEstimator, maxCachedChars, incremental);
+        }
+        return new CachingTokenCountEstimator(delegate, maxCachedChars, incremental);
+    }
+
+    public CachingTokenCountEstimator(TokenCountEstimator delegate, long maxCachedChars, boolean incremental) {
+        this.delegate = delegate;
+        this.incremental = incremental;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxCachedChars)
+                .<String, Integer>weigher((text, count) -> text.length())
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public int estimateTokenCountInText(String text) {
+        int tokens = cache.get(text, this::count);
+        if (incremental && text.length() >= MIN_INCREMENTAL_LENGTH) {
+            Deque<Counted> texts = recent.get();
+            if (texts.size() == RECENT_TEXTS) {
+                texts.removeLast();
+            }
+            texts.addFirst(new Counted(text, tokens));
+        }
+        return tokens;
+    }
+
+    private int count(String text) {
+        if (incremental && text.length() >= MIN_INCREMENTAL_LENGTH) {
+            for (Counted prefix : recent.get()) {
+                if (prefix.text().length() < text.length() && text.startsWith(prefix.text())) {
+                    int cut = wordBoundary(prefix.text());
+                    if (cut > 0) {
+                        return prefix.tokens()
+                                - delegate.estimateTokenCountInText(prefix.text().substring(cut))
+                                + delegate.estimateTokenCountInText(text.substring(cut));
+                    }
+                }
+            }
+        }
+        return delegate.estimateTokenCountInText(text);
+    }
+
+    /**
+     * @return the index of a single space between two words near the end of the text, -1 if there is none
+     */
+    private static int wordBoundary(String text) {
+        int end = text.length() - 2;
+        int start = Math.max(1, text.length() - RECOUNTED_TAIL);
+        for (int i = start; i <= end; i++) {
+            if (text.charAt(i) == ' '
+                    && !Character.isWhitespace(text.charAt(i - 1))
+                    && !Character.isWhitespace(text.charAt(i + 1))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int estimateTokenCountInMessage(ChatMessage message) {
+        return delegate.estimateTokenCountInMessage(message);
+    }
+
+    @Override
+    public int estimateTokenCountInMessages(Iterable<ChatMessage> messages) {
+        return delegate.estimateTokenCountInMessages(messages);
+    }
+
+    Cache<String, Integer> cache() {
+        return cache;
+    }
+}
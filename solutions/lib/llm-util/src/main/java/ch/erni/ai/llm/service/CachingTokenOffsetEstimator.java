@@ -0,0 +1,24 @@
+package ch.erni.ai.llm.service;
+
+/**
+ * {@link CachingTokenCountEstimator} of a {@link TokenOffsetEstimator}, the token offsets are passed to the delegate
+ * uncached.
+ */
+public class CachingTokenOffsetEstimator extends CachingTokenCountEstimator implements TokenOffsetEstimator {
+
+    private final TokenOffsetEstimator delegate;
+
+    public CachingTokenOffsetEstimator(TokenOffsetEstimator delegate, long maxCachedChars) {
+        this(delegate, maxCachedChars, true);
+    }
+
+    public CachingTokenOffsetEstimator(TokenOffsetEstimator delegate, long maxCachedChars, boolean incremental) {
+        super(delegate, maxCachedChars, incremental);
+        this.delegate = delegate;
+    }
+
+    @Override
+    public int[] tokenOffsets(String text) {
+        return delegate.tokenOffsets(text);
+    }
+}
@@ -4,50 +4,99 @@ import ch.erni.ai.llm.model.ListModelsResponse;
 import ch.erni.ai.llm.model.ModelData;
 import dev.langchain4j.http.client.spring.restclient.SpringRestClientBuilder;
 import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.openai.OpenAiChatModel;
 import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.client.RestClient;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Models served by LM Studio.
+ * <p>
+ * The model list is held in a catalog indexed by id. Once loaded, the catalog is never refreshed on the caller's
+ * thread: an expired catalog is still returned while a single background refresh replaces it
+ * (stale-while-revalidate). If the refresh fails the old catalog is kept and the refresh is retried later.
+ * Only the very first lookup waits for the model list.
+ * <p>
+ * Replaced by the {@link RoutingModelService} if {@code application.model-router.enabled} is set.
+ */
+@Slf4j
 @Service
+@ConditionalOnProperty(name = "application.model-router.enabled", havingValue = "false", matchIfMissing = true)
 @RequiredArgsConstructor
 public class LmStudioModelService implements ModelService {
 
-    @Value("${application.lmstudio.base-urL:http://localhost:1234/v1}")
+    private static final Duration FAILED_REFRESH_RETRY = Duration.ofSeconds(10);
+
+    private record Catalog(List<ModelData> models, Map<String, ModelData> byId, Instant expiresAt) {
+
+        Catalog retryAt(Instant retryAt) {
+            return new Catalog(models, byId, retryAt);
+        }
+    }
+
+    @Value("${application.llmstudio.base-url:http://localhost:1234/v1}")
     private String lmStudioBaseUrl;
+    @Value("${application.llmstudio.models-ttl:5m}")
+    private Duration modelsTtl;
     private final SpringRestClientBuilder springRestClientBuilder;
+    private final RestClient.Builder restClientBuilder;
+
+    private RestClient restClient;
+    private final AtomicReference<Catalog> catalog = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<Catalog>> refreshing = new AtomicReference<>();
+
+    @PostConstruct
+    void init() {
+        this.restClient = restClientBuilder.clone().baseUrl(lmStudioBaseUrl).build();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        refresh().exceptionally(e -> null);
+    }
 
-    @Cacheable("lmstudio_models")
     public List<ModelData> getModels() {
-        RestTemplate restTemplate = new RestTemplate();
-        var response = restTemplate.getForEntity(this.lmStudioBaseUrl + "/models", ListModelsResponse.class);
-        assert response.getBody() != null;
-        return response.getBody().getData().stream().peek(
-                e -> e.setOwned_by("lmstudio")
-        ).toList();
+        return catalog().models();
+    }
+
+    @Override
+    public Optional<ModelData> findModel(String id) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(catalog().byId().get(id));
     }
 
     @Cacheable("lmstudio_embedding_models")
     public EmbeddingModel getEmbeddingModel(String id) {
-        var models = this.getModels();
-        var model = models.stream().
-                filter(modelData -> modelData.getId().equals(id))
-                .findFirst().orElse(null);
-        if (model == null) {
-            throw new ModelNotFoundException("Could not find model with id " + id);
-        }
+        var model = findModel(id).orElseThrow(() -> new ModelNotFoundException("Could not find model with id " + id));
         if (model.getId().contains("embed")) {
             return OpenAiEmbeddingModel
                     .builder()
                     .httpClientBuilder(springRestClientBuilder)
                     .modelName(model.getId())
-                    .baseUrl("http://localhost:1234/v1")
+                    .baseUrl(lmStudioBaseUrl)
                     .apiKey("ignored")
                     .build();
         } else {
@@ -57,13 +106,7 @@ public class LmStudioModelService implements ModelService {
 
     @Cacheable("lmstudio_chat_models")
     public ChatModel getChatLanguageModel(String id) {
-        var models = this.getModels();
-        var model = models.stream().
-                filter(modelData -> modelData.getId().equals(id))
-                .findFirst().orElse(null);
-        if (model == null) {
-            throw new ModelNotFoundException("Could not find model with id " + id);
-        }
+        var model = findModel(id).orElseThrow(() -> new ModelNotFoundException("Could not find model with id " + id));
         if (!model.getId().contains("embed")) {
             return OpenAiChatModel
                     .builder()
@@ -76,4 +119,89 @@ public class LmStudioModelService implements ModelService {
             throw new IllegalArgumentException("model with id " + id + " is an embedding model and no chatmodel");
         }
     }
+
+    @Cacheable("lmstudio_streaming_chat_models")
+    public StreamingChatModel getStreamingChatLanguageModel(String id) {
+        var model = findModel(id).orElseThrow(() -> new ModelNotFoundException("Could not find model with id " + id));
+        if (!model.getId().contains("embed")) {
+            return OpenAiStreamingChatModel
+                    .builder()
+                    .modelName(model.getId())
+                    .httpClientBuilder(springRestClientBuilder)
+                    .baseUrl(lmStudioBaseUrl)
+                    .apiKey("ignored")
+                    .build();
+        } else {
+            throw new IllegalArgumentException("model with id " + id + " is an embedding model and no chatmodel");
+        }
+    }
+
+    private Catalog catalog() {
+        Catalog current = catalog.get();
+        if (current == null) {
+            // nothing to serve yet, join the load
+            try {
+                return refresh().join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        if (Instant.now().isAfter(current.expiresAt())) {
+            refresh();
+        }
+        return current;
+    }
+
+    /**
+     * Starts a refresh of the catalog, or returns the one already running.
+     */
+    private CompletableFuture<Catalog> refresh() {
+        while (true) {
+            CompletableFuture<Catalog> running = refreshing.get();
+            if (running != null) {
+                return running;
+            }
+            CompletableFuture<Catalog> future = new CompletableFuture<>();
+            if (refreshing.compareAndSet(null, future)) {
+                Thread.ofVirtual().name("lmstudio-models-refresh").start(() -> load(future));
+                return future;
+            }
+        }
+    }
+
+    private void load(CompletableFuture<Catalog> future) {
+        try {
+            Catalog loaded = fetchCatalog();
+            catalog.set(loaded);
+            refreshing.set(null);
+            future.complete(loaded);
+            log.info("Loaded {} models from {}", loaded.models().size(), lmStudioBaseUrl);
+        } catch (RuntimeException e) {
+            Catalog stale = catalog.get();
+            if (stale != null) {
+                catalog.set(stale.retryAt(Instant.now().plus(FAILED_REFRESH_RETRY)));
+                log.warn("Could not refresh models from {}, keeping {} known models: {}",
+                        lmStudioBaseUrl, stale.models().size(), e.getMessage());
+            } else {
+                log.warn("Could not load models from {}: {}", lmStudioBaseUrl, e.getMessage());
+            }
+            refreshing.set(null);
+            future.completeExceptionally(e);
+        }
+    }
+
+    private Catalog fetchCatalog() {
+        ListModelsResponse response = restClient.get()
+                .uri("/models")
+                .retrieve()
+                .body(ListModelsResponse.class);
+        Map<String, ModelData> byId = new LinkedHashMap<>();
+        if (response != null && response.getData() != null) {
+            for (ModelData model : response.getData()) {
+                model.setOwned_by("lmstudio");
+                byId.put(model.getId(), model);
+            }
+        }
+        return new Catalog(List.copyOf(byId.values()), Map.copyOf(byId), Instant.now().plus(modelsTtl));
+    }
 }
@@ -1,37 +1,186 @@
 package ch.erni.ai.llm.service;
 
-import ai.djl.huggingface.tokenizers.Encoding;
 import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer;
+import ai.djl.huggingface.tokenizers.jni.CharSpan;
+import ai.djl.huggingface.tokenizers.jni.TokenizersLibrary;
 import dev.langchain4j.data.message.*;
-import dev.langchain4j.model.TokenCountEstimator;
+import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Alternative implementation that can load the tokenizer file from huggingface directly.
+ * <p>
+ * The tokenizer.json of a model is downloaded once into a local cache directory and loaded from there afterwards,
+ * so a restart needs no network. In offline mode only local files are used. Concurrent first calls for the same
+ * model share one load. A tokenizer is safe to use from many threads, so one instance per model is shared.
+ * <p>
+ * Counting only fetches the token ids of the encoding, no token strings, offsets or masks. Texts are never
+ * truncated to the model's max length, the count is the full length of the text.
  */
-public class LoadingFromHuggingFaceTokenEstimator implements TokenCountEstimator {
+@Slf4j
+public class LoadingFromHuggingFaceTokenEstimator implements TokenOffsetEstimator {
 
-    private static Map<String, LoadingFromHuggingFaceTokenEstimator> CACHE = new ConcurrentHashMap<>();
+    public static final Path DEFAULT_CACHE_DIR = Path.of(System.getProperty("user.home"), ".cache", "tokenizers");
+    private static final Map<String, String> OPTIONS = Map.of("truncation", "false", "padding", "false");
+    private static final Duration DOWNLOAD_TIMEOUT = Duration.ofSeconds(60);
+
+    private static final Map<String, CompletableFuture<LoadingFromHuggingFaceTokenEstimator>> CACHE = new ConcurrentHashMap<>();
     private final HuggingFaceTokenizer tokenizer;
 
+    /**
+     * @param model a huggingface model id like "nomic-ai/nomic-embed-text-v2-moe", or a local tokenizer.json
+     *              or a directory containing one
+     */
     public static LoadingFromHuggingFaceTokenEstimator get(String model) {
-        if (!CACHE.containsKey(model) ){
+        return get(model, DEFAULT_CACHE_DIR, false);
+    }
 
-            HuggingFaceTokenizer tokenizer = HuggingFaceTokenizer.newInstance(model);
-            CACHE.put(model, new LoadingFromHuggingFaceTokenEstimator(tokenizer));
+    /**
+     * @param cacheDir directory the tokenizer.json files are downloaded to, one subdirectory per model
+     * @param offline  if set, never downloads and fails if the tokenizer is not cached
+     */
+    public static LoadingFromHuggingFaceTokenEstimator get(String model, Path cacheDir, boolean offline) {
+        CompletableFuture<LoadingFromHuggingFaceTokenEstimator> future = new CompletableFuture<>();
+        CompletableFuture<LoadingFromHuggingFaceTokenEstimator> loading = CACHE.putIfAbsent(model, future);
+        if (loading == null) {
+            // this call loads, all others for the same model wait for it
+            try {
+                future.complete(new LoadingFromHuggingFaceTokenEstimator(load(model, cacheDir, offline)));
+            } catch (RuntimeException e) {
+                // forget the failure, the next call tries again
+                CACHE.remove(model, future);
+                future.completeExceptionally(e);
+            }
+            loading = future;
+        }
+        try {
+            return loading.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
         }
-        return CACHE.get(model);
     }
 
+    private static HuggingFaceTokenizer load(String model, Path cacheDir, boolean offline) {
+        Path local = Path.of(model);
+        if (Files.isRegularFile(local) || Files.isRegularFile(local.resolve("tokenizer.json"))) {
+            return newTokenizer(local);
+        }
+        Path cached = cacheDir.resolve(model).resolve("tokenizer.json");
+        if (!Files.isRegularFile(cached)) {
+            if (offline) {
+                throw new IllegalStateException("Tokenizer of " + model + " is not cached in " + cached.getParent()
+                        + " and downloading is disabled");
+            }
+            download(model, cached);
+        }
+        return newTokenizer(cached);
+    }
+
+    private static HuggingFaceTokenizer newTokenizer(Path path) {
+        try {
+            log.info("Loading tokenizer from {}", path);
+            return HuggingFaceTokenizer.newInstance(path, OPTIONS);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load tokenizer from " + path, e);
+        }
+    }
+
+    private static void download(String model, Path target) {
+        String endpoint = System.getenv().getOrDefault("HF_ENDPOINT", "https://huggingface.co");
+        URI uri = URI.create(endpoint + "/" + model + "/resolve/main/tokenizer.json");
+        log.info("Downloading tokenizer of {} from {}", model, uri);
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri).timeout(DOWNLOAD_TIMEOUT);
+        String token = System.getenv("HF_TOKEN");
+        if (token != null && !token.isBlank()) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        try (HttpClient client = HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(DOWNLOAD_TIMEOUT)
+                .build()) {
+            HttpResponse<InputStream> response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = response.body()) {
+                if (response.statusCode() != 200) {
+                    throw new IllegalStateException("Could not download tokenizer of " + model + ": HTTP " + response.statusCode());
+                }
+                Files.createDirectories(target.getParent());
+                // write next to the target and move, so a broken download never looks like a cached tokenizer
+                Path temp = Files.createTempFile(target.getParent(), "tokenizer", ".json.tmp");
+                try {
+                    Files.copy(body, temp, StandardCopyOption.REPLACE_EXISTING);
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not download tokenizer of " + model + " from " + uri, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while downloading tokenizer of " + model, e);
+        }
+    }
+
+    /**
+     * The tokenizer should not lower case or strip accents, counting passes the text to it unchanged.
+     */
     public LoadingFromHuggingFaceTokenEstimator(HuggingFaceTokenizer tokenizer) {
         this.tokenizer = tokenizer;
     }
 
     public int estimateTokenCountInText(String text) {
-        Encoding encoding = this.tokenizer.encode(text, false, true);
-        return encoding.getTokens().length;
+        if (text == null) {
+            throw new NullPointerException("text cannot be null");
+        }
+        long encoding = TokenizersLibrary.LIB.encode(this.tokenizer.getHandle(), text, false);
+        try {
+            return TokenizersLibrary.LIB.getTokenIds(encoding).length;
+        } finally {
+            TokenizersLibrary.LIB.deleteEncoding(encoding);
+        }
+    }
+
+    @Override
+    public int[] tokenOffsets(String text) {
+        long encoding = TokenizersLibrary.LIB.encode(this.tokenizer.getHandle(), text, false);
+        CharSpan[] spans;
+        try {
+            spans = TokenizersLibrary.LIB.getTokenCharSpans(encoding);
+        } finally {
+            TokenizersLibrary.LIB.deleteEncoding(encoding);
+        }
+        int[] offsets = new int[spans.length * 2];
+        for (int i = 0; i < spans.length; i++) {
+            offsets[2 * i] = spans[i].getStart();
+            offsets[2 * i + 1] = spans[i].getEnd();
+        }
+        // the tokenizer counts code points, java strings count chars
+        if (text.length() != text.codePointCount(0, text.length())) {
+            int[] charIndex = new int[text.codePointCount(0, text.length()) + 1];
+            for (int c = 0, i = 0; i < text.length(); i += Character.charCount(text.codePointAt(i))) {
+                charIndex[c++] = i;
+            }
+            charIndex[charIndex.length - 1] = text.length();
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = charIndex[Math.min(offsets[i], charIndex.length - 1)];
+            }
+        }
+        return offsets;
     }
 
     public int estimateTokenCountInMessage(ChatMessage message) {
@@ -0,0 +1,317 @@
+package ch.erni.ai.llm.service;
+
+import ch.erni.ai.llm.config.ModelAdmissionConfig;
+import ch.erni.ai.llm.config.ModelAdmissionConfig.Limits;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.ModelProvider;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.CompleteToolCall;
+import dev.langchain4j.model.chat.response.PartialThinking;
+import dev.langchain4j.model.chat.response.PartialToolCall;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the number of concurrent requests per model.
+ * <p>
+ * The models returned by {@link ModelRegistry} are wrapped so every call needs a permit of its model. Calls that get
+ * no permit wait in a bounded FIFO queue; if the queue is full or the wait takes longer than the configured maximum
+ * the call fails at once with a {@link ModelOverloadedException} instead of piling up on the model server.
+ * Chat and streaming chat calls of the same model share the permits. A streaming chat waits on a virtual thread
+ * and reports a timeout to the handler's {@code onError}, so the calling thread, e.g. a request thread, is not
+ * blocked; only a full queue is thrown at once.
+ * <p>
+ * Metrics, tagged with the model: "llm.admission.in_flight", "llm.admission.queued", "llm.admission.wait" and
+ * "llm.admission.rejected" (tagged with the reason queue_full or timeout).
+ */
+@Slf4j
+@Service
+public class ModelAdmissionController {
+
+    private final ModelAdmissionConfig config;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Limiter> limiters = new ConcurrentHashMap<>();
+
+    public ModelAdmissionController(ModelAdmissionConfig config, ObjectProvider<MeterRegistry> meterRegistry) {
+        this.config = config;
+        this.meterRegistry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+    }
+
+    public ChatModel limit(String modelId, ChatModel model) {
+        return config.isEnabled() ? new AdmittedChatModel(limiter(modelId, config.getChat()), model) : model;
+    }
+
+    public StreamingChatModel limit(String modelId, StreamingChatModel model) {
+        return config.isEnabled() ? new AdmittedStreamingChatModel(limiter(modelId, config.getChat()), model) : model;
+    }
+
+    public EmbeddingModel limit(String modelId, EmbeddingModel model) {
+        return config.isEnabled() ? new AdmittedEmbeddingModel(limiter(modelId, config.getEmbedding()), model) : model;
+    }
+
+    private Limiter limiter(String modelId, Limits defaults) {
+        return limiters.computeIfAbsent(modelId, id -> new Limiter(id, config.getModels().getOrDefault(id, defaults)));
+    }
+
+    private final class Limiter {
+
+        private final String modelId;
+        private final Limits limits;
+        private final Semaphore permits;
+        private final AtomicInteger queued = new AtomicInteger();
+        private final Timer waitTimer;
+        private final Counter queueFull;
+        private final Counter timedOut;
+
+        Limiter(String modelId, Limits limits) {
+            this.modelId = modelId;
+            this.limits = limits;
+            this.permits = new Semaphore(limits.getMaxConcurrent(), true);
+            Gauge.builder("llm.admission.in_flight", permits, p -> limits.getMaxConcurrent() - p.availablePermits())
+                    .tag("model", modelId)
+                    .register(meterRegistry);
+            Gauge.builder("llm.admission.queued", queued, AtomicInteger::get)
+                    .tag("model", modelId)
+                    .register(meterRegistry);
+            this.waitTimer = Timer.builder("llm.admission.wait")
+                    .tag("model", modelId)
+                    .register(meterRegistry);
+            this.queueFull = Counter.builder("llm.admission.rejected")
+                    .tags("model", modelId, "reason", "queue_full")
+                    .register(meterRegistry);
+            this.timedOut = Counter.builder("llm.admission.rejected")
+                    .tags("model", modelId, "reason", "timeout")
+                    .register(meterRegistry);
+            log.info("Admission limits of model {}: {}", modelId, limits);
+        }
+
+        void acquire() {
+            if (!tryAcquire()) {
+                enqueue();
+                awaitPermit();
+            }
+        }
+
+        /**
+         * @return whether a permit was free, the caller then holds it
+         */
+        boolean tryAcquire() {
+            // only take the fast path if nobody is waiting, so the queue stays FIFO
+            if (queued.get() == 0 && permits.tryAcquire()) {
+                waitTimer.record(0, TimeUnit.NANOSECONDS);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Takes a place in the queue, must be followed by {@link #awaitPermit()}.
+         */
+        void enqueue() {
+            if (queued.incrementAndGet() > limits.getMaxQueued()) {
+                queued.decrementAndGet();
+                queueFull.increment();
+                throw new ModelOverloadedException("Model " + modelId + " is overloaded, "
+                        + limits.getMaxQueued() + " requests are already waiting");
+            }
+        }
+
+        void awaitPermit() {
+            long start = System.nanoTime();
+            try {
+                if (!permits.tryAcquire(limits.getMaxWait().toNanos(), TimeUnit.NANOSECONDS)) {
+                    timedOut.increment();
+                    throw new ModelOverloadedException("Model " + modelId + " is overloaded, no slot became free within "
+                            + limits.getMaxWait());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ModelOverloadedException("Interrupted while waiting for model " + modelId);
+            } finally {
+                queued.decrementAndGet();
+                waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        <T> T call(Supplier<T> call) {
+            acquire();
+            try {
+                return call.get();
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    private static final class AdmittedChatModel implements ChatModel {
+
+        private final Limiter limiter;
+        private final ChatModel delegate;
+
+        AdmittedChatModel(Limiter limiter, ChatModel delegate) {
+            this.limiter = limiter;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public ChatResponse chat(ChatRequest request) {
+            return limiter.call(() -> delegate.chat(request));
+        }
+
+        @Override
+        public ChatRequestParameters defaultRequestParameters() {
+            return delegate.defaultRequestParameters();
+        }
+
+        @Override
+        public ModelProvider provider() {
+            return delegate.provider();
+        }
+
+        @Override
+        public Set<Capability> supportedCapabilities() {
+            return delegate.supportedCapabilities();
+        }
+    }
+
+    private static final class AdmittedStreamingChatModel implements StreamingChatModel {
+
+        private final Limiter limiter;
+        private final StreamingChatModel delegate;
+
+        AdmittedStreamingChatModel(Limiter limiter, StreamingChatModel delegate) {
+            this.limiter = limiter;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void chat(ChatRequest request, StreamingChatResponseHandler handler) {
+            if (limiter.tryAcquire()) {
+                start(request, handler);
+                return;
+            }
+            limiter.enqueue();
+            Thread.ofVirtual().name("llm-admission-" + limiter.modelId).start(() -> {
+                try {
+                    limiter.awaitPermit();
+                    start(request, handler);
+                } catch (RuntimeException e) {
+                    handler.onError(e);
+                }
+            });
+        }
+
+        /**
+         * Starts the stream with the permit already acquired, it is released when the stream ends.
+         */
+        private void start(ChatRequest request, StreamingChatResponseHandler handler) {
+            AtomicBoolean released = new AtomicBoolean();
+            Runnable release = () -> {
+                if (released.compareAndSet(false, true)) {
+                    limiter.permits.release();
+                }
+            };
+            try {
+                delegate.chat(request, new StreamingChatResponseHandler() {
+
+                    @Override
+                    public void onPartialResponse(String partialResponse) {
+                        handler.onPartialResponse(partialResponse);
+                    }
+
+                    @Override
+                    public void onPartialThinking(PartialThinking partialThinking) {
+                        handler.onPartialThinking(partialThinking);
+                    }
+
+                    @Override
+                    public void onPartialToolCall(PartialToolCall partialToolCall) {
+                        handler.onPartialToolCall(partialToolCall);
+                    }
+
+                    @Override
+                    public void onCompleteToolCall(CompleteToolCall completeToolCall) {
+                        handler.onCompleteToolCall(completeToolCall);
+                    }
+
+                    @Override
+                    public void onCompleteResponse(ChatResponse response) {
+                        release.run();
+                        handler.onCompleteResponse(response);
+                    }
+
+                    @Override
+                    public void onError(Throwable error) {
+                        release.run();
+                        handler.onError(error);
+                    }
+                });
+            } catch (RuntimeException e) {
+                release.run();
+                throw e;
+            }
+        }
+
+        @Override
+        public ChatRequestParameters defaultRequestParameters() {
+            return delegate.defaultRequestParameters();
+        }
+
+        @Override
+        public ModelProvider provider() {
+            return delegate.provider();
+        }
+
+        @Override
+        public Set<Capability> supportedCapabilities() {
+            return delegate.supportedCapabilities();
+        }
+    }
+
+    private static final class AdmittedEmbeddingModel implements EmbeddingModel {
+
+        private final Limiter limiter;
+        private final EmbeddingModel delegate;
+
+        AdmittedEmbeddingModel(Limiter limiter, EmbeddingModel delegate) {
+            this.limiter = limiter;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+            return limiter.call(() -> delegate.embedAll(textSegments));
+        }
+
+        @Override
+        public int dimension() {
+            // known or probed once by the model itself, no need to queue for it
+            return delegate.dimension();
+        }
+    }
+}
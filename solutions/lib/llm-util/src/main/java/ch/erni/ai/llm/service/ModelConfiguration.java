@@ -0,0 +1,42 @@
+package ch.erni.ai.llm.service;
+
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+
+/**
+ * Immutable snapshot of the current models of the {@link ModelRegistry}.
+ * <p>
+ * The chat part (id, chat model, streaming chat model) and the embedding part (id, embedding model, token count
+ * estimator) always belong together. A part is resolved on first use, until then only its id is set.
+ * A request should get the snapshot once and use it throughout, so switching a model never mixes the models
+ * of the old and the new configuration.
+ */
+public record ModelConfiguration(String chatModelId,
+                                 ChatModel chatModel,
+                                 StreamingChatModel streamingChatModel,
+                                 String embeddingModelId,
+                                 EmbeddingModel embeddingModel,
+                                 TokenCountEstimator tokenCountEstimator) {
+
+    static ModelConfiguration unresolved(String chatModelId, String embeddingModelId) {
+        return new ModelConfiguration(chatModelId, null, null, embeddingModelId, null, null);
+    }
+
+    public boolean isChatResolved() {
+        return chatModel != null;
+    }
+
+    public boolean isEmbeddingResolved() {
+        return embeddingModel != null;
+    }
+
+    ModelConfiguration withChat(String id, ChatModel model, StreamingChatModel streamingModel) {
+        return new ModelConfiguration(id, model, streamingModel, embeddingModelId, embeddingModel, tokenCountEstimator);
+    }
+
+    ModelConfiguration withEmbedding(String id, EmbeddingModel model, TokenCountEstimator estimator) {
+        return new ModelConfiguration(chatModelId, chatModel, streamingChatModel, id, model, estimator);
+    }
+}
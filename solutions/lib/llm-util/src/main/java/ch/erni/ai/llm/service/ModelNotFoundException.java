@@ -2,5 +2,6 @@ package ch.erni.ai.llm.service;
 
 public class ModelNotFoundException extends RuntimeException {
     public ModelNotFoundException(String s) {
+        super(s);
     }
 }
@@ -0,0 +1,10 @@
+package ch.erni.ai.llm.service;
+
+/**
+ * A model call was rejected because the model is busy and its wait queue is full or the wait timed out.
+ */
+public class ModelOverloadedException extends RuntimeException {
+    public ModelOverloadedException(String message) {
+        super(message);
+    }
+}
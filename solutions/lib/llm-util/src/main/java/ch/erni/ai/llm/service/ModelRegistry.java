@@ -3,61 +3,125 @@ package ch.erni.ai.llm.service;
 import ch.erni.ai.llm.model.ModelData;
 import dev.langchain4j.model.TokenCountEstimator;
 import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import lombok.Getter;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
+/**
+ * Current chat and embedding model and access to all models of the {@link ModelService}.
+ * Every model returned is limited by the {@link ModelAdmissionController}.
+ * <p>
+ * The current models are held in an immutable {@link ModelConfiguration} that is replaced atomically, so a
+ * concurrent request never sees the new embedding model with the old tokenizer. Requests that use more than one
+ * current model should get the configuration once with {@link #getChatConfiguration()} or
+ * {@link #getEmbeddingConfiguration()} and stay with it.
+ */
 @Service
 @RequiredArgsConstructor
 public class ModelRegistry {
 
-    private final LmStudioModelService lmStudioModelService;
+    private final ModelService modelService;
+    private final ModelAdmissionController admissionController;
     private final TokenCountEstimatorRegistry tokenCountEstimatorRegistry;
 
-    private ChatModel currentChatLanguageModel;
-    @Getter
     @Value("${application.chat-model.model-name:openai/gpt-oss-120b}")
-    private String currentChatModelId;
-    private EmbeddingModel currentEmbeddingModel;
-    @Getter
+    private String initialChatModelId;
     @Value("${application.embedding-model.model-name:text-embedding-nomic-embed-text-v2}")
-    private String currentEmbeddingModelId;
-    @Getter
-    private TokenCountEstimator tokenCountEstimatorEmbeddingModel;
+    private String initialEmbeddingModelId;
+    private final AtomicReference<ModelConfiguration> configuration = new AtomicReference<>();
 
-    public ChatModel getCurrentChatLanguageModel() {
-        if (this.currentChatLanguageModel != null)
-            return this.currentChatLanguageModel;
-        if (this.getCurrentChatModelId() != null) {
-            return setCurrentChatLanguageModel(this.currentChatModelId);
+    @PostConstruct
+    void init() {
+        configuration.set(ModelConfiguration.unresolved(initialChatModelId, initialEmbeddingModelId));
+    }
+
+    /**
+     * @return the current configuration, the chat and embedding models may not be resolved yet
+     */
+    public ModelConfiguration getConfiguration() {
+        return configuration.get();
+    }
+
+    /**
+     * @return the current configuration with the chat models resolved
+     */
+    public ModelConfiguration getChatConfiguration() {
+        return resolve(ModelConfiguration::isChatResolved, current -> current.withChat(current.chatModelId(),
+                getChatLanguageModel(current.chatModelId()), getStreamingChatLanguageModel(current.chatModelId())));
+    }
+
+    /**
+     * @return the current configuration with the embedding model and its token count estimator resolved
+     */
+    public ModelConfiguration getEmbeddingConfiguration() {
+        return resolve(ModelConfiguration::isEmbeddingResolved, current -> current.withEmbedding(current.embeddingModelId(),
+                getEmbeddingModel(current.embeddingModelId()), getTokenCountEstimator(current.embeddingModelId())));
+    }
+
+    private ModelConfiguration resolve(Predicate<ModelConfiguration> resolved, UnaryOperator<ModelConfiguration> resolver) {
+        while (true) {
+            ModelConfiguration current = configuration.get();
+            if (resolved.test(current)) {
+                return current;
+            }
+            ModelConfiguration next = resolver.apply(current);
+            // if the configuration was switched in the meantime, resolve the new one
+            if (configuration.compareAndSet(current, next)) {
+                return next;
+            }
         }
-        throw new ModelNotFoundException("No current model set");
+    }
+
+    public String getCurrentChatModelId() {
+        return configuration.get().chatModelId();
+    }
+
+    public String getCurrentEmbeddingModelId() {
+        return configuration.get().embeddingModelId();
+    }
+
+    public ChatModel getCurrentChatLanguageModel() {
+        return getChatConfiguration().chatModel();
+    }
+
+    public StreamingChatModel getCurrentStreamingChatLanguageModel() {
+        return getChatConfiguration().streamingChatModel();
     }
 
     public EmbeddingModel getCurrentEmbeddingModel() {
-        if (this.currentEmbeddingModel != null)
-            return this.currentEmbeddingModel;
-        if (this.currentEmbeddingModelId != null) {
-            return setCurrentEmbeddingModel(this.currentEmbeddingModelId);
-        }
-        throw new ModelNotFoundException("No current model set");
+        return getEmbeddingConfiguration().embeddingModel();
+    }
+
+    public TokenCountEstimator getTokenCountEstimatorEmbeddingModel() {
+        return getEmbeddingConfiguration().tokenCountEstimator();
     }
 
+    /**
+     * Switches the embedding model and its token count estimator in one step, both are resolved before.
+     */
     public EmbeddingModel setCurrentEmbeddingModel(String id) {
-        this.currentEmbeddingModel = getEmbeddingModel(id);
-        this.currentEmbeddingModelId = id;
-        this.tokenCountEstimatorEmbeddingModel = getTokenCountEstimator(id);
-        return this.currentEmbeddingModel;
+        EmbeddingModel embeddingModel = getEmbeddingModel(id);
+        TokenCountEstimator tokenCountEstimator = getTokenCountEstimator(id);
+        configuration.updateAndGet(current -> current.withEmbedding(id, embeddingModel, tokenCountEstimator));
+        return embeddingModel;
     }
 
+    /**
+     * Switches the chat and the streaming chat model in one step, both are resolved before.
+     */
     public ChatModel setCurrentChatLanguageModel(String id) {
-        this.currentChatLanguageModel = getChatLanguageModel(id);
-        this.currentChatModelId = id;
-        return this.currentChatLanguageModel;
+        ChatModel chatModel = getChatLanguageModel(id);
+        StreamingChatModel streamingChatModel = getStreamingChatLanguageModel(id);
+        configuration.updateAndGet(current -> current.withChat(id, chatModel, streamingChatModel));
+        return chatModel;
     }
 
     public TokenCountEstimator getTokenCountEstimator(String model) {
@@ -65,20 +129,27 @@ public class ModelRegistry {
     }
 
     public EmbeddingModel getEmbeddingModel(String id) {
-        if (lmStudioModelService.hasModel(id)) {
-            return lmStudioModelService.getEmbeddingModel(id);
+        if (modelService.hasModel(id)) {
+            return admissionController.limit(id, modelService.getEmbeddingModel(id));
         }
-        throw new IllegalArgumentException("could not find embeddingmodel with id: " + id + "in lm studio.");
+        throw new IllegalArgumentException("could not find embeddingmodel with id: " + id + " in " + modelService.getClass().getSimpleName());
     }
 
     public ChatModel getChatLanguageModel(String id) {
-        if (lmStudioModelService.hasModel(id)) {
-            return lmStudioModelService.getChatLanguageModel(id);
+        if (modelService.hasModel(id)) {
+            return admissionController.limit(id, modelService.getChatLanguageModel(id));
+        }
+        throw new IllegalArgumentException("could not find chatmodel with id: " + id + " in " + modelService.getClass().getSimpleName());
+    }
+
+    public StreamingChatModel getStreamingChatLanguageModel(String id) {
+        if (modelService.hasModel(id)) {
+            return admissionController.limit(id, modelService.getStreamingChatLanguageModel(id));
         }
-        throw new IllegalArgumentException("could not find chatmodel with id: " + id + "in lm studio.");
+        throw new IllegalArgumentException("could not find chatmodel with id: " + id + " in " + modelService.getClass().getSimpleName());
     }
 
     public List<ModelData> getModels() {
-        return lmStudioModelService.getModels().stream().toList();
+        return modelService.getModels().stream().toList();
     }
 }
@@ -2,9 +2,11 @@ package ch.erni.ai.llm.service;
 
 import ch.erni.ai.llm.model.ModelData;
 import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 
 import java.util.List;
+import java.util.Optional;
 
 public interface ModelService {
 
@@ -14,10 +16,15 @@ public interface ModelService {
 
     ChatModel getChatLanguageModel(String id);
 
-    default boolean hasModel(String id) {
+    StreamingChatModel getStreamingChatLanguageModel(String id);
+
+    default Optional<ModelData> findModel(String id) {
         return getModels().stream()
                 .filter(model -> model.getId().equals(id))
-                .findFirst()
-                .orElse(null) != null;
+                .findFirst();
+    }
+
+    default boolean hasModel(String id) {
+        return findModel(id).isPresent();
     }
 }
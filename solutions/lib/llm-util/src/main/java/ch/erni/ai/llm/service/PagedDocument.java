@@ -0,0 +1,23 @@
+package ch.erni.ai.llm.service;
+
+/**
+ * A document that is read one page at a time, so it never has to be held in memory as a whole.
+ */
+public interface PagedDocument extends AutoCloseable {
+
+    /**
+     * @return identifies the document and its version, a changed document must get another id
+     */
+    String id();
+
+    int pageCount();
+
+    /**
+     * @param page the page number, starting with 1
+     * @return the text of the page
+     */
+    String pageText(int page);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,447 @@
+package ch.erni.ai.llm.service;
+
+import ch.erni.ai.llm.config.ModelRouterConfig;
+import ch.erni.ai.llm.model.ListModelsResponse;
+import ch.erni.ai.llm.model.ModelData;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.exception.RetriableException;
+import dev.langchain4j.exception.UnresolvedModelServerException;
+import dev.langchain4j.http.client.spring.restclient.SpringRestClientBuilder;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.CompleteToolCall;
+import dev.langchain4j.model.chat.response.PartialThinking;
+import dev.langchain4j.model.chat.response.PartialToolCall;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import dev.langchain4j.model.output.Response;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClient;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.net.http.HttpConnectTimeoutException;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Routes model calls over several OpenAI compatible servers, enabled with {@code application.model-router.enabled}.
+ * <p>
+ * The models of every endpoint are listed in the health check interval, an endpoint that does not answer is taken
+ * out of the rotation until it answers again. Every call goes to the healthy endpoint serving the model with the
+ * fewest outstanding requests. If the endpoint fails with a connection error, a timeout or a server error the call is
+ * retried on the next endpoint. Only an endpoint that cannot be connected to is taken out of the rotation until the
+ * next health check, a server error or read timeout may be caused by the request itself. The catalog is only
+ * changed by the health check. Streaming calls only fail over if the error happens before the first token. The models do not retry on their own, a failed call is retried on the
+ * next endpoint instead.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "application.model-router.enabled", havingValue = "true")
+public class RoutingModelService implements ModelService {
+
+    private static final Duration HEALTH_CHECK_TIMEOUT = Duration.ofSeconds(5);
+
+    private static final class Endpoint {
+        final String name;
+        final String baseUrl;
+        final String apiKey;
+        final RestClient restClient;
+        final AtomicInteger outstanding = new AtomicInteger();
+        final Map<String, ChatModel> chatModels = new ConcurrentHashMap<>();
+        final Map<String, StreamingChatModel> streamingChatModels = new ConcurrentHashMap<>();
+        final Map<String, EmbeddingModel> embeddingModels = new ConcurrentHashMap<>();
+        volatile boolean healthy;
+        volatile Set<String> models = Set.of();
+
+        Endpoint(ModelRouterConfig.Endpoint config, RestClient.Builder restClientBuilder) {
+            this.name = config.getName() != null ? config.getName() : config.getBaseUrl();
+            this.baseUrl = config.getBaseUrl();
+            this.apiKey = config.getApiKey();
+            var requestFactory = new SimpleClientHttpRequestFactory();
+            requestFactory.setConnectTimeout(HEALTH_CHECK_TIMEOUT);
+            requestFactory.setReadTimeout(HEALTH_CHECK_TIMEOUT);
+            this.restClient = restClientBuilder.clone().baseUrl(baseUrl).requestFactory(requestFactory).build();
+        }
+    }
+
+    private final ModelRouterConfig config;
+    private final SpringRestClientBuilder springRestClientBuilder;
+    private final List<Endpoint> endpoints;
+    private final AtomicInteger nextEndpoint = new AtomicInteger();
+    private final CompletableFuture<Void> firstHealthCheck = new CompletableFuture<>();
+    private final Map<String, ChatModel> chatModels = new ConcurrentHashMap<>();
+    private final Map<String, StreamingChatModel> streamingChatModels = new ConcurrentHashMap<>();
+    private final Map<String, EmbeddingModel> embeddingModels = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService healthCheck = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("model-router-health-check").factory());
+    // all models of the healthy endpoints by id
+    private volatile Map<String, ModelData> catalog = Map.of();
+
+    public RoutingModelService(ModelRouterConfig config, SpringRestClientBuilder springRestClientBuilder,
+                               RestClient.Builder restClientBuilder) {
+        if (config.getEndpoints().isEmpty()) {
+            throw new IllegalArgumentException("application.model-router.endpoints must not be empty");
+        }
+        this.config = config;
+        this.springRestClientBuilder = springRestClientBuilder;
+        this.endpoints = config.getEndpoints().stream()
+                .map(endpoint -> new Endpoint(endpoint, restClientBuilder))
+                .toList();
+        healthCheck.scheduleWithFixedDelay(this::checkEndpoints, 0,
+                config.getHealthCheckInterval().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public List<ModelData> getModels() {
+        return List.copyOf(catalog().values());
+    }
+
+    @Override
+    public Optional<ModelData> findModel(String id) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(catalog().get(id));
+    }
+
+    @Override
+    public EmbeddingModel getEmbeddingModel(String id) {
+        var model = findModel(id).orElseThrow(() -> new ModelNotFoundException("Could not find model with id " + id));
+        if (!model.getId().contains("embed")) {
+            throw new IllegalArgumentException("model with id " + id + " is not an embedding model");
+        }
+        return embeddingModels.computeIfAbsent(id, RoutingEmbeddingModel::new);
+    }
+
+    @Override
+    public ChatModel getChatLanguageModel(String id) {
+        var model = findModel(id).orElseThrow(() -> new ModelNotFoundException("Could not find model with id " + id));
+        if (model.getId().contains("embed")) {
+            throw new IllegalArgumentException("model with id " + id + " is an embedding model and no chatmodel");
+        }
+        return chatModels.computeIfAbsent(id, RoutingChatModel::new);
+    }
+
+    @Override
+    public StreamingChatModel getStreamingChatLanguageModel(String id) {
+        var model = findModel(id).orElseThrow(() -> new ModelNotFoundException("Could not find model with id " + id));
+        if (model.getId().contains("embed")) {
+            throw new IllegalArgumentException("model with id " + id + " is an embedding model and no chatmodel");
+        }
+        return streamingChatModels.computeIfAbsent(id, RoutingStreamingChatModel::new);
+    }
+
+    private Map<String, ModelData> catalog() {
+        // only the lookups right after the start wait for the first health check
+        firstHealthCheck.join();
+        return catalog;
+    }
+
+    private void checkEndpoints() {
+        try {
+            for (Endpoint endpoint : endpoints) {
+                checkEndpoint(endpoint);
+            }
+            updateCatalog();
+        } catch (RuntimeException e) {
+            log.error("Model router health check failed", e);
+        } finally {
+            firstHealthCheck.complete(null);
+        }
+    }
+
+    private void checkEndpoint(Endpoint endpoint) {
+        try {
+            ListModelsResponse response = endpoint.restClient.get()
+                    .uri("/models")
+                    .retrieve()
+                    .body(ListModelsResponse.class);
+            Set<String> models = response != null && response.getData() != null
+                    ? response.getData().stream().map(ModelData::getId).collect(Collectors.toUnmodifiableSet())
+                    : Set.of();
+            if (!endpoint.healthy || !models.equals(endpoint.models)) {
+                log.info("Model router: endpoint {} is up and serves {}", endpoint.name, models);
+            }
+            endpoint.models = models;
+            endpoint.healthy = true;
+        } catch (RuntimeException e) {
+            if (endpoint.healthy || !firstHealthCheck.isDone()) {
+                log.warn("Model router: endpoint {} is down: {}", endpoint.name, e.getMessage());
+            }
+            endpoint.healthy = false;
+        }
+    }
+
+    private void updateCatalog() {
+        Map<String, ModelData> models = new LinkedHashMap<>();
+        for (Endpoint endpoint : endpoints) {
+            if (!endpoint.healthy) {
+                continue;
+            }
+            for (String id : endpoint.models) {
+                ModelData model = models.computeIfAbsent(id, i -> new ModelData(i, "model", null));
+                model.setOwned_by(model.getOwned_by() == null ? endpoint.name : model.getOwned_by() + "," + endpoint.name);
+            }
+        }
+        catalog = Map.copyOf(models);
+    }
+
+    /**
+     * Takes the endpoint out of the rotation if it cannot be connected to, the next health check brings it back.
+     */
+    private void markDown(Endpoint endpoint, Throwable e) {
+        if (!isConnectionFailure(e)) {
+            return;
+        }
+        if (endpoint.healthy) {
+            endpoint.healthy = false;
+            log.warn("Model router: endpoint {} cannot be reached and is taken out of the rotation: {}",
+                    endpoint.name, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the healthy endpoint serving the model with the fewest outstanding requests, ties are broken
+     * round-robin.
+     */
+    private Endpoint select(String modelId, Set<Endpoint> exclude) {
+        int start = Math.floorMod(nextEndpoint.getAndIncrement(), endpoints.size());
+        Endpoint best = null;
+        for (int i = 0; i < endpoints.size(); i++) {
+            Endpoint endpoint = endpoints.get((start + i) % endpoints.size());
+            if (!endpoint.healthy || !endpoint.models.contains(modelId) || exclude.contains(endpoint)) {
+                continue;
+            }
+            if (best == null || endpoint.outstanding.get() < best.outstanding.get()) {
+                best = endpoint;
+            }
+        }
+        return best;
+    }
+
+    private <T> T route(String modelId, Function<Endpoint, T> call) {
+        Set<Endpoint> tried = new HashSet<>();
+        RuntimeException lastError = null;
+        while (tried.size() < config.getMaxAttempts()) {
+            Endpoint endpoint = select(modelId, tried);
+            if (endpoint == null) {
+                break;
+            }
+            tried.add(endpoint);
+            endpoint.outstanding.incrementAndGet();
+            try {
+                return call.apply(endpoint);
+            } catch (RuntimeException e) {
+                if (!isEndpointFailure(e)) {
+                    throw e;
+                }
+                markDown(endpoint, e);
+                lastError = e;
+            } finally {
+                endpoint.outstanding.decrementAndGet();
+            }
+        }
+        throw lastError != null ? lastError : noEndpoint(modelId);
+    }
+
+    private static ModelNotFoundException noEndpoint(String modelId) {
+        return new ModelNotFoundException("No healthy endpoint serves model " + modelId);
+    }
+
+    private static boolean isEndpointFailure(Throwable e) {
+        if (e instanceof RetriableException || e instanceof UnresolvedModelServerException) {
+            return true;
+        }
+        if (e instanceof HttpException http) {
+            return http.statusCode() >= 500;
+        }
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isConnectionFailure(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof UnresolvedModelServerException || t instanceof ConnectException
+                    || t instanceof HttpConnectTimeoutException || t instanceof UnknownHostException
+                    || t instanceof NoRouteToHostException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @PreDestroy
+    public void close() {
+        healthCheck.shutdownNow();
+    }
+
+    private class RoutingChatModel implements ChatModel {
+
+        private final String modelId;
+
+        RoutingChatModel(String modelId) {
+            this.modelId = modelId;
+        }
+
+        @Override
+        public ChatResponse chat(ChatRequest request) {
+            return route(modelId, endpoint -> endpoint.chatModels.computeIfAbsent(modelId, id -> OpenAiChatModel
+                    .builder()
+                    .modelName(id)
+                    .httpClientBuilder(springRestClientBuilder)
+                    .baseUrl(endpoint.baseUrl)
+                    .apiKey(endpoint.apiKey)
+                    .maxRetries(0)
+                    .build()).chat(request));
+        }
+    }
+
+    private class RoutingStreamingChatModel implements StreamingChatModel {
+
+        private final String modelId;
+
+        RoutingStreamingChatModel(String modelId) {
+            this.modelId = modelId;
+        }
+
+        @Override
+        public void chat(ChatRequest request, StreamingChatResponseHandler handler) {
+            attempt(request, handler, new HashSet<>(), null);
+        }
+
+        private void attempt(ChatRequest request, StreamingChatResponseHandler handler,
+                             Set<Endpoint> tried, Throwable lastError) {
+            Endpoint endpoint = tried.size() < config.getMaxAttempts() ? select(modelId, tried) : null;
+            if (endpoint == null) {
+                handler.onError(lastError != null ? lastError : noEndpoint(modelId));
+                return;
+            }
+            tried.add(endpoint);
+            endpoint.outstanding.incrementAndGet();
+            AtomicBoolean released = new AtomicBoolean();
+            AtomicBoolean started = new AtomicBoolean();
+            Runnable release = () -> {
+                if (released.compareAndSet(false, true)) {
+                    endpoint.outstanding.decrementAndGet();
+                }
+            };
+            StreamingChatResponseHandler routingHandler = new StreamingChatResponseHandler() {
+
+                @Override
+                public void onPartialResponse(String partialResponse) {
+                    started.set(true);
+                    handler.onPartialResponse(partialResponse);
+                }
+
+                @Override
+                public void onPartialThinking(PartialThinking partialThinking) {
+                    started.set(true);
+                    handler.onPartialThinking(partialThinking);
+                }
+
+                @Override
+                public void onPartialToolCall(PartialToolCall partialToolCall) {
+                    started.set(true);
+                    handler.onPartialToolCall(partialToolCall);
+                }
+
+                @Override
+                public void onCompleteToolCall(CompleteToolCall completeToolCall) {
+                    started.set(true);
+                    handler.onCompleteToolCall(completeToolCall);
+                }
+
+                @Override
+                public void onCompleteResponse(ChatResponse response) {
+                    release.run();
+                    handler.onCompleteResponse(response);
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    release.run();
+                    if (!started.get() && isEndpointFailure(error)) {
+                        markDown(endpoint, error);
+                        attempt(request, handler, tried, error);
+                    } else {
+                        handler.onError(error);
+                    }
+                }
+            };
+            try {
+                endpoint.streamingChatModels.computeIfAbsent(modelId, id -> OpenAiStreamingChatModel
+                        .builder()
+                        .modelName(id)
+                        .httpClientBuilder(springRestClientBuilder)
+                        .baseUrl(endpoint.baseUrl)
+                        .apiKey(endpoint.apiKey)
+                        .build()).chat(request, routingHandler);
+            } catch (RuntimeException e) {
+                routingHandler.onError(e);
+            }
+        }
+    }
+
+    private class RoutingEmbeddingModel implements EmbeddingModel {
+
+        private final String modelId;
+        private volatile Integer dimension;
+
+        RoutingEmbeddingModel(String modelId) {
+            this.modelId = modelId;
+        }
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+            return route(modelId, endpoint -> endpoint.embeddingModels.computeIfAbsent(modelId, id -> OpenAiEmbeddingModel
+                    .builder()
+                    .modelName(id)
+                    .httpClientBuilder(springRestClientBuilder)
+                    .baseUrl(endpoint.baseUrl)
+                    .apiKey(endpoint.apiKey)
+                    .maxRetries(0)
+                    .build()).embedAll(textSegments));
+        }
+
+        @Override
+        public int dimension() {
+            // every endpoint serves the same model, so the dimension is only asked once
+            if (dimension == null) {
+                dimension = EmbeddingModel.super.dimension();
+            }
+            return dimension;
+        }
+    }
+}
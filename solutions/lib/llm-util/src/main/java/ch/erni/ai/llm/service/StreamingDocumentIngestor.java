@@ -0,0 +1,226 @@
+package ch.erni.ai.llm.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.comparison.IsEqualTo;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Splits, embeds and stores a {@link PagedDocument} page by page with bounded memory.
+ * <p>
+ * Only the current page and the text of the last, unfinished segment are held, segments may span pages.
+ * Every {@code pagesPerCheckpoint} pages the segments are embedded and stored and a checkpoint is written to the
+ * checkpoint directory. After a crash the same document resumes at the page after the last checkpoint. The
+ * segment ids are derived from the document id and the segment number, so segments stored again after a resume
+ * replace the ones stored before the crash. A completed document is skipped until its id changes.
+ * <p>
+ * Every segment gets the given metadata, the "page" it starts on and its "index" in the document. The given metadata
+ * identifies the document, e.g. by its file name: before a document is ingested from its first page, the segments
+ * stored with the same metadata are removed, so a changed document does not leave the segments of its previous
+ * version behind.
+ */
+@Slf4j
+public class StreamingDocumentIngestor {
+
+    /**
+     * Progress of a document, the unfinished segment starts on {@code carryPage} and continues on the pages
+     * starting at the offsets {@code carryPageStarts} within {@code carry}.
+     */
+    record Checkpoint(String document, int nextPage, int nextSegment, String carry, int carryPage,
+                      List<Integer> carryPageStarts, boolean completed) {
+
+        static Checkpoint start(String document) {
+            return new Checkpoint(document, 1, 0, "", 1, List.of(), false);
+        }
+    }
+
+    public record Result(String document, int pages, int segments, int resumedAtPage, boolean skipped) {
+    }
+
+    private final TokenWindowSplitter splitter;
+    private final BatchingEmbedder embedder;
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final Path checkpointDir;
+    private final int pagesPerCheckpoint;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public StreamingDocumentIngestor(TokenWindowSplitter splitter, BatchingEmbedder embedder,
+                                     EmbeddingStore<TextSegment> embeddingStore, Path checkpointDir,
+                                     int pagesPerCheckpoint) {
+        if (pagesPerCheckpoint <= 0) {
+            throw new IllegalArgumentException("pagesPerCheckpoint must be greater than 0");
+        }
+        this.splitter = splitter;
+        this.embedder = embedder;
+        this.embeddingStore = embeddingStore;
+        this.checkpointDir = checkpointDir;
+        this.pagesPerCheckpoint = pagesPerCheckpoint;
+    }
+
+    public Result ingest(PagedDocument document, Metadata metadata) {
+        Checkpoint checkpoint = readCheckpoint(document.id()).orElse(Checkpoint.start(document.id()));
+        int pageCount = document.pageCount();
+        if (checkpoint.completed()) {
+            log.info("{} is already ingested", document.id());
+            return new Result(document.id(), pageCount, checkpoint.nextSegment(), checkpoint.nextPage(), true);
+        }
+        if (checkpoint.nextPage() > 1) {
+            log.info("Resuming {} at page {} of {}", document.id(), checkpoint.nextPage(), pageCount);
+        } else if (!metadata.toMap().isEmpty()) {
+            // segments of a previous version of the document, or of this one stored before the first checkpoint
+            embeddingStore.removeAll(sameMetadata(metadata));
+        }
+
+        StringBuilder buffer = new StringBuilder(checkpoint.carry());
+        // the page numbers and where they start in the buffer
+        List<Integer> pages = new ArrayList<>();
+        List<Integer> pageStarts = new ArrayList<>();
+        pages.add(checkpoint.carryPage());
+        pageStarts.add(0);
+        for (int i = 0; i < checkpoint.carryPageStarts().size(); i++) {
+            pages.add(checkpoint.carryPage() + i + 1);
+            pageStarts.add(checkpoint.carryPageStarts().get(i));
+        }
+        int nextSegment = checkpoint.nextSegment();
+        List<String> ids = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+
+        for (int page = checkpoint.nextPage(); page <= pageCount; page++) {
+            if (buffer.isEmpty()) {
+                pages.set(0, page);
+            } else {
+                buffer.append("\n\n");
+                pages.add(page);
+                pageStarts.add(buffer.length());
+            }
+            buffer.append(document.pageText(page));
+            boolean last = page == pageCount;
+
+            if (!buffer.toString().isBlank()) {
+                String text = buffer.toString();
+                List<TextSegment> split = splitter.split(Document.from(text));
+                int searchFrom = 0;
+                int carryStart = text.length();
+                for (int i = 0; i < split.size(); i++) {
+                    int start = text.indexOf(split.get(i).text(), searchFrom);
+                    searchFrom = start + 1;
+                    if (i == split.size() - 1 && !last) {
+                        // the last segment may grow with the next page, split it again then
+                        carryStart = start;
+                        break;
+                    }
+                    var segmentMetadata = metadata.copy()
+                            .put("page", pageAt(pages, pageStarts, start))
+                            .put("index", String.valueOf(nextSegment));
+                    ids.add(segmentId(document.id(), nextSegment++));
+                    segments.add(TextSegment.from(split.get(i).text(), segmentMetadata));
+                }
+                carry(buffer, pages, pageStarts, carryStart);
+            } else {
+                carry(buffer, pages, pageStarts, buffer.length());
+            }
+
+            if (last || (page - checkpoint.nextPage() + 1) % pagesPerCheckpoint == 0) {
+                embedder.embedAndStore(ids, segments, embeddingStore);
+                ids.clear();
+                segments.clear();
+                writeCheckpoint(new Checkpoint(document.id(), page + 1, nextSegment, buffer.toString(), pages.getFirst(),
+                        List.copyOf(pageStarts.subList(1, pageStarts.size())), last));
+                log.debug("{}: {} of {} pages, {} segments", document.id(), page, pageCount, nextSegment);
+            }
+        }
+        if (pageCount == 0) {
+            writeCheckpoint(new Checkpoint(document.id(), 1, 0, "", 1, List.of(), true));
+        }
+        return new Result(document.id(), pageCount, nextSegment, checkpoint.nextPage(), false);
+    }
+
+    /**
+     * Keeps the text from {@code start} on in the buffer, and the pages it spans.
+     */
+    private static void carry(StringBuilder buffer, List<Integer> pages, List<Integer> pageStarts, int start) {
+        int firstPage = pageAt(pages, pageStarts, start);
+        while (pages.size() > 1 && pageStarts.get(1) <= start) {
+            pages.removeFirst();
+            pageStarts.removeFirst();
+        }
+        pages.set(0, firstPage);
+        pageStarts.set(0, 0);
+        for (int i = 1; i < pageStarts.size(); i++) {
+            pageStarts.set(i, pageStarts.get(i) - start);
+        }
+        buffer.delete(0, start);
+    }
+
+    private static int pageAt(List<Integer> pages, List<Integer> pageStarts, int offset) {
+        int page = pages.getFirst();
+        for (int i = 1; i < pageStarts.size() && pageStarts.get(i) <= offset; i++) {
+            page = pages.get(i);
+        }
+        return page;
+    }
+
+    private static Filter sameMetadata(Metadata metadata) {
+        Filter filter = null;
+        for (Map.Entry<String, Object> entry : metadata.toMap().entrySet()) {
+            Filter equal = new IsEqualTo(entry.getKey(), entry.getValue());
+            filter = filter == null ? equal : filter.and(equal);
+        }
+        return filter;
+    }
+
+    private static String segmentId(String document, int segment) {
+        return UUID.nameUUIDFromBytes((document + "#" + segment).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private Path checkpointFile(String document) {
+        return checkpointDir.resolve(UUID.nameUUIDFromBytes(document.getBytes(StandardCharsets.UTF_8)) + ".json");
+    }
+
+    private Optional<Checkpoint> readCheckpoint(String document) {
+        Path file = checkpointFile(document);
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        try {
+            Checkpoint checkpoint = objectMapper.readValue(file.toFile(), Checkpoint.class);
+            return document.equals(checkpoint.document()) ? Optional.of(checkpoint) : Optional.empty();
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable checkpoint {}: {}", file, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private void writeCheckpoint(Checkpoint checkpoint) {
+        Path file = checkpointFile(checkpoint.document());
+        try {
+            Files.createDirectories(checkpointDir);
+            // write next to the checkpoint and move, a crash while writing keeps the previous checkpoint
+            Path temp = Files.createTempFile(checkpointDir, "checkpoint", ".json.tmp");
+            try {
+                objectMapper.writeValue(temp.toFile(), checkpoint);
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write checkpoint " + file, e);
+        }
+    }
+}
@@ -1,18 +1,44 @@
 package ch.erni.ai.llm.service;
 import ch.erni.ai.llm.config.TokenizerConfig;
 import dev.langchain4j.model.TokenCountEstimator;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Token count estimators of the configured models. If enabled, counts are memoized per model, published as
+ * "cache.*" meters with the tags cache=token-counts and model.
+ */
 @Service
-@RequiredArgsConstructor
 public class TokenCountEstimatorRegistry {
     private final TokenizerConfig tokenizerConfig;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, TokenCountEstimator> cachingEstimators = new ConcurrentHashMap<>();
+
+    public TokenCountEstimatorRegistry(TokenizerConfig tokenizerConfig, ObjectProvider<MeterRegistry> meterRegistry) {
+        this.tokenizerConfig = tokenizerConfig;
+        this.meterRegistry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+    }
 
     public TokenCountEstimator getTokenCountEstimator(String model) {
         var tokenizer = tokenizerConfig.getTokenizer().stream().filter(t -> t.getName().equals(model)).findFirst();
         if (tokenizer.isPresent()) {
-            return LoadingFromHuggingFaceTokenEstimator.get(tokenizer.get().getPath());
+            var estimator = LoadingFromHuggingFaceTokenEstimator.get(tokenizer.get().getPath(), tokenizerConfig.getCacheDir(),
+                    tokenizerConfig.isOffline());
+            if (!tokenizerConfig.getCountCache().isEnabled()) {
+                return estimator;
+            }
+            return cachingEstimators.computeIfAbsent(model, m -> {
+                var caching = CachingTokenCountEstimator.of(estimator, tokenizerConfig.getCountCache().getMaxChars(),
+                        tokenizerConfig.getCountCache().isIncremental());
+                CaffeineCacheMetrics.monitor(meterRegistry, caching.cache(), "token-counts", "model", m);
+                return caching;
+            });
         } else {
             throw new IllegalArgumentException("no tokenizer for model configured. Found tokenizers: " + tokenizerConfig.getTokenizer());
         }
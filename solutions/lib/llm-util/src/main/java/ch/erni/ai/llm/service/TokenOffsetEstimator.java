@@ -0,0 +1,14 @@
+package ch.erni.ai.llm.service;
+
+import dev.langchain4j.model.TokenCountEstimator;
+
+/**
+ * Token count estimator that also tells where the tokens are in the text.
+ */
+public interface TokenOffsetEstimator extends TokenCountEstimator {
+
+    /**
+     * @return start and end index (exclusive) in the text of each token, as {@code [start0, end0, start1, end1, ...]}
+     */
+    int[] tokenOffsets(String text);
+}
@@ -0,0 +1,210 @@
+package ch.erni.ai.llm.service;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Splits a document into windows of at most {@code maxSegmentSizeInTokens} tokens that overlap by up to
+ * {@code maxOverlapSizeInTokens} tokens.
+ * <p>
+ * The text is tokenized once, block by block as the segments are consumed, and the segments are cut by token
+ * offsets, so no intermediate substrings are built and no token is counted twice. A segment ends at the last
+ * sentence end in the last quarter of its window, if there is one, and the overlap starts at a sentence start.
+ * Sentences end with '.', '!' or '?' followed by whitespace, or at a line break.
+ * <p>
+ * Like the langchain4j splitters every segment gets the metadata of the document and its "index".
+ */
+public class TokenWindowSplitter implements DocumentSplitter {
+
+    /**
+     * Characters tokenized per call, the block is cut at a space so no token is split.
+     */
+    private static final int BLOCK_SIZE = 32 * 1024;
+
+    private final TokenOffsetEstimator tokenizer;
+    private final int maxSegmentSizeInTokens;
+    private final int maxOverlapSizeInTokens;
+
+    public TokenWindowSplitter(TokenOffsetEstimator tokenizer, int maxSegmentSizeInTokens, int maxOverlapSizeInTokens) {
+        if (maxSegmentSizeInTokens <= 0 || maxOverlapSizeInTokens < 0 || maxOverlapSizeInTokens >= maxSegmentSizeInTokens) {
+            throw new IllegalArgumentException("segment size must be greater than 0 and greater than the overlap");
+        }
+        this.tokenizer = tokenizer;
+        this.maxSegmentSizeInTokens = maxSegmentSizeInTokens;
+        this.maxOverlapSizeInTokens = maxOverlapSizeInTokens;
+    }
+
+    @Override
+    public List<TextSegment> split(Document document) {
+        return splitLazily(document).toList();
+    }
+
+    /**
+     * @return the segments of the document, each one is only cut when the stream gets to it
+     */
+    public Stream<TextSegment> splitLazily(Document document) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new Segments(document),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private final class Segments implements Iterator<TextSegment> {
+
+        private final Document document;
+        private final String text;
+        /**
+         * Start and end of the buffered tokens, {@code [start0, end0, start1, end1, ...]}, the first buffered
+         * token is token number {@code firstToken} of the text.
+         */
+        private int[] offsets = new int[0];
+        private int buffered;
+        private int firstToken;
+        private int tokenizedUpTo;
+        private int nextToken;
+        private int index;
+
+        Segments(Document document) {
+            this.document = document;
+            this.text = document.text();
+        }
+
+        @Override
+        public boolean hasNext() {
+            fill(nextToken + 1);
+            return nextToken < firstToken + buffered;
+        }
+
+        @Override
+        public TextSegment next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int start = nextToken;
+            fill(start + maxSegmentSizeInTokens + 1);
+            int available = firstToken + buffered;
+            int end = Math.min(start + maxSegmentSizeInTokens, available);
+            if (end < available) {
+                end = snapToSentenceEnd(start, end);
+            }
+            TextSegment segment = segment(start, end);
+            nextToken = end >= available ? end : nextStart(start, end);
+            // tokens before the next segment are never needed again
+            discardBefore(nextToken);
+            return segment;
+        }
+
+        private TextSegment segment(int start, int end) {
+            String segmentText = text.substring(startOf(start), endOf(end - 1));
+            var metadata = document.metadata().copy().put("index", String.valueOf(index++));
+            return TextSegment.from(segmentText, metadata);
+        }
+
+        /**
+         * @return the end of the last sentence in the last quarter of the window, or the window end if there is none
+         */
+        private int snapToSentenceEnd(int start, int end) {
+            int earliest = Math.max(start + 1, end - maxSegmentSizeInTokens / 4);
+            for (int token = end; token > earliest; token--) {
+                if (endsSentence(token - 1)) {
+                    return token;
+                }
+            }
+            return end;
+        }
+
+        /**
+         * @return the first sentence start within the overlap, or the overlap start if there is none
+         */
+        private int nextStart(int start, int end) {
+            int overlapStart = Math.max(start + 1, end - maxOverlapSizeInTokens);
+            for (int token = overlapStart; token < end; token++) {
+                if (endsSentence(token - 1)) {
+                    return token;
+                }
+            }
+            return overlapStart;
+        }
+
+        private boolean endsSentence(int token) {
+            int end = endOf(token);
+            if (end >= text.length()) {
+                return true;
+            }
+            char last = text.charAt(end - 1);
+            if ((last == '.' || last == '!' || last == '?') && Character.isWhitespace(text.charAt(end))) {
+                return true;
+            }
+            // a line break between this token and the next one
+            for (int i = end; i < text.length() && Character.isWhitespace(text.charAt(i)); i++) {
+                if (text.charAt(i) == '\n') {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int startOf(int token) {
+            return offsets[2 * (token - firstToken)];
+        }
+
+        private int endOf(int token) {
+            return offsets[2 * (token - firstToken) + 1];
+        }
+
+        /**
+         * Tokenizes further blocks until the buffer reaches the token or the end of the text.
+         */
+        private void fill(int token) {
+            while (firstToken + buffered < token && tokenizedUpTo < text.length()) {
+                int blockEnd = blockEnd(tokenizedUpTo);
+                int[] block = tokenizer.tokenOffsets(text.substring(tokenizedUpTo, blockEnd));
+                if (2 * buffered + block.length > offsets.length) {
+                    offsets = Arrays.copyOf(offsets, Math.max(2 * buffered + block.length, 2 * offsets.length));
+                }
+                for (int i = 0; i < block.length; i++) {
+                    offsets[2 * buffered + i] = block[i] + tokenizedUpTo;
+                }
+                buffered += block.length / 2;
+                tokenizedUpTo = blockEnd;
+            }
+        }
+
+        private int blockEnd(int blockStart) {
+            if (text.length() - blockStart <= BLOCK_SIZE) {
+                return text.length();
+            }
+            int end = blockStart + BLOCK_SIZE;
+            for (int i = end; i > blockStart + BLOCK_SIZE / 2; i--) {
+                if (text.charAt(i) == ' ' && !Character.isWhitespace(text.charAt(i - 1))
+                        && !Character.isWhitespace(text.charAt(i + 1))) {
+                    return i;
+                }
+            }
+            // no single space, cut at any whitespace or finally in the middle of a word
+            for (int i = end; i > blockStart + BLOCK_SIZE / 2; i--) {
+                if (Character.isWhitespace(text.charAt(i))) {
+                    return i;
+                }
+            }
+            return Character.isLowSurrogate(text.charAt(end)) ? end - 1 : end;
+        }
+
+        private void discardBefore(int token) {
+            int discarded = token - firstToken;
+            if (discarded > 0) {
+                System.arraycopy(offsets, 2 * discarded, offsets, 0, 2 * (buffered - discarded));
+                buffered -= discarded;
+                firstToken = token;
+            }
+        }
+    }
+}
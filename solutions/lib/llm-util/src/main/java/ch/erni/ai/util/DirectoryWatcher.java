@@ -0,0 +1,81 @@
+package ch.erni.ai.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Watches a directory (not its subdirectories) on a daemon thread and calls the listener once the directory
+ * has been quiet for the debounce time, so copying many files triggers a single reload.
+ */
+@Slf4j
+public class DirectoryWatcher implements Closeable {
+
+    private final Path directory;
+    private final Duration debounce;
+    private final Runnable onChange;
+    private WatchService watchService;
+    private Thread thread;
+
+    public DirectoryWatcher(Path directory, Duration debounce, Runnable onChange) {
+        this.directory = directory;
+        this.debounce = debounce;
+        this.onChange = onChange;
+    }
+
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        thread = Thread.ofPlatform()
+                .daemon()
+                .name("directory-watcher-" + directory.getFileName())
+                .start(this::watch);
+        log.info("Watching {} for changes", directory);
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                // collect all events until the directory is quiet
+                do {
+                    key.pollEvents();
+                    key.reset();
+                    key = watchService.poll(debounce.toMillis(), TimeUnit.MILLISECONDS);
+                } while (key != null);
+                try {
+                    onChange.run();
+                } catch (RuntimeException e) {
+                    log.error("Error while handling changes in {}", directory, e);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            log.debug("Stopped watching {}", directory);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+}